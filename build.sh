@@ -0,0 +1,38 @@
+#!/bin/sh
+# Compiles the miner into out/ (or $OUT).  The optional vector mining kernel in src-vector needs the
+# incubating jdk.incubator.vector module, so it is compiled separately, next to the rest; pass --no-vector
+# to leave it out, as on a JDK without the module.  Pass test to also compile and run the tests in test/,
+# each in a scratch directory, as the miner writes its keys to the working directory.
+set -e
+cd "$(dirname "$0")"
+OUT=${OUT:-out}
+VECTOR=yes
+TEST=no
+
+for arg in "$@"; do
+    case "$arg" in
+        --no-vector) VECTOR=no ;;
+        test) TEST=yes ;;
+        *) echo "Usage: $0 [--no-vector] [test]" >&2; exit 2 ;;
+    esac
+done
+
+rm -rf "$OUT"
+javac -d "$OUT" src/blockchain/*.java
+
+if [ "$VECTOR" = yes ]; then
+    javac --add-modules jdk.incubator.vector -cp "$OUT" -d "$OUT" src-vector/blockchain/*.java
+fi
+
+if [ "$TEST" = yes ]; then
+    TEST_OUT="$OUT-test"
+    rm -rf "$TEST_OUT"
+    javac -cp "$OUT" -d "$TEST_OUT" test/blockchain/*.java
+    CLASSPATH="$(cd "$OUT" && pwd):$(cd "$TEST_OUT" && pwd)"
+
+    for test in test/blockchain/*Test.java; do
+        SCRATCH=$(mktemp -d)
+        (cd "$SCRATCH" && java -cp "$CLASSPATH" "blockchain.$(basename "$test" .java)")
+        rm -rf "$SCRATCH"
+    done
+fi
@@ -0,0 +1,175 @@
+package blockchain;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Hashes as many magic numbers at once as the CPU has 32 bit SIMD lanes (4, 8 or 16), one magic number per lane,
+ * starting from a shared {@link Sha256Midstate}.  Needs the jdk.incubator.vector module, so it is only ever
+ * loaded through {@link MiningKernels}.
+ */
+final class VectorSha256Kernel implements MiningKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final int lanes = SPECIES.length();
+
+    @Override
+    public int getLanes() {
+        return lanes;
+    }
+
+    @Override
+    public long search(Sha256Midstate midstate, long firstNonce, int nonces, int numberOfZeros) {
+        Batch batch = new Batch(midstate);
+        int zeroBits = Math.min(32, 4 * numberOfZeros);
+        // the first word of the digest has to pass this mask before the lanes are looked at one by one
+        int firstWordMask = zeroBits == 0 ? 0 : -1 << (32 - zeroBits);
+        int[] digest = new int[8];
+
+        for (long nonce = firstNonce; nonce < firstNonce + nonces; nonce += lanes) {
+            IntVector[] state = batch.hash(nonce);
+
+            if (!state[0].and(firstWordMask).eq(0).anyTrue()) {
+                continue;
+            }
+
+            int[][] words = new int[8][];
+
+            for (int i = 0; i < 8; i++) {
+                words[i] = state[i].toArray();
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                for (int i = 0; i < 8; i++) {
+                    digest[i] = words[i][lane];
+                }
+
+                if (Sha256Midstate.hasLeadingZeros(digest, numberOfZeros)) {
+                    return nonce + lane;
+                }
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    @Override
+    public int[][] digests(Sha256Midstate midstate, long firstNonce) {
+        IntVector[] state = new Batch(midstate).hash(firstNonce);
+        int[][] digests = new int[lanes][8];
+
+        for (int i = 0; i < 8; i++) {
+            int[] word = state[i].toArray();
+
+            for (int lane = 0; lane < lanes; lane++) {
+                digests[lane][i] = word[lane];
+            }
+        }
+
+        return digests;
+    }
+
+    /* The per-midstate scratch space, so that hashing a batch of magic numbers does not allocate arrays */
+    private final class Batch {
+        private final Sha256Midstate midstate;
+        private final int[] initialState;
+        private final byte[] scratch;
+        private final int[] tailWords;
+        private final int[][] laneWords;
+        private final IntVector[] constantWords;
+        private final IntVector[] words = new IntVector[64];
+
+        Batch(Sha256Midstate midstate) {
+            this.midstate = midstate;
+            this.initialState = midstate.getState();
+            this.scratch = midstate.newScratch();
+            this.tailWords = new int[16 * midstate.getTailBlocks()];
+            this.laneWords = new int[tailWords.length][lanes];
+            this.constantWords = new IntVector[tailWords.length];
+            midstate.tailWords(Sha256Midstate.MIN_NONCE, scratch, tailWords);
+
+            for (int i = 0; i < tailWords.length; i++) {
+                constantWords[i] = IntVector.broadcast(SPECIES, tailWords[i]);
+            }
+        }
+
+        IntVector[] hash(long firstNonce) {
+            int firstDigitWord = midstate.getFirstDigitWord();
+            int lastDigitWord = midstate.getLastDigitWord();
+
+            for (int lane = 0; lane < lanes; lane++) {
+                midstate.tailWords(firstNonce + lane, scratch, tailWords);
+
+                for (int i = firstDigitWord; i <= lastDigitWord; i++) {
+                    laneWords[i][lane] = tailWords[i];
+                }
+            }
+
+            IntVector[] state = new IntVector[8];
+
+            for (int i = 0; i < 8; i++) {
+                state[i] = IntVector.broadcast(SPECIES, initialState[i]);
+            }
+
+            for (int block = 0; block < midstate.getTailBlocks(); block++) {
+                for (int i = 0; i < 16; i++) {
+                    int word = block * 16 + i;
+                    words[i] = word >= firstDigitWord && word <= lastDigitWord
+                            ? IntVector.fromArray(SPECIES, laneWords[word], 0)
+                            : constantWords[word];
+                }
+
+                compress(state, words);
+            }
+
+            return state;
+        }
+    }
+
+    private static void compress(IntVector[] state, IntVector[] w) {
+        for (int t = 16; t < 64; t++) {
+            IntVector s0 = w[t - 15].lanewise(VectorOperators.ROR, 7)
+                    .lanewise(VectorOperators.XOR, w[t - 15].lanewise(VectorOperators.ROR, 18))
+                    .lanewise(VectorOperators.XOR, w[t - 15].lanewise(VectorOperators.LSHR, 3));
+            IntVector s1 = w[t - 2].lanewise(VectorOperators.ROR, 17)
+                    .lanewise(VectorOperators.XOR, w[t - 2].lanewise(VectorOperators.ROR, 19))
+                    .lanewise(VectorOperators.XOR, w[t - 2].lanewise(VectorOperators.LSHR, 10));
+            w[t] = w[t - 16].add(s0).add(w[t - 7]).add(s1);
+        }
+
+        IntVector a = state[0], b = state[1], c = state[2], d = state[3];
+        IntVector e = state[4], f = state[5], g = state[6], h = state[7];
+
+        for (int t = 0; t < 64; t++) {
+            IntVector bigSigma1 = e.lanewise(VectorOperators.ROR, 6)
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 11))
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 25));
+            IntVector choose = e.and(f).lanewise(VectorOperators.XOR, g.lanewise(VectorOperators.AND_NOT, e));
+            IntVector t1 = h.add(bigSigma1).add(choose).add(Sha256Midstate.K[t]).add(w[t]);
+            IntVector bigSigma0 = a.lanewise(VectorOperators.ROR, 2)
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 13))
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 22));
+            IntVector majority = a.and(b).lanewise(VectorOperators.XOR, a.and(c))
+                    .lanewise(VectorOperators.XOR, b.and(c));
+            IntVector t2 = bigSigma0.add(majority);
+            h = g;
+            g = f;
+            f = e;
+            e = d.add(t1);
+            d = c;
+            c = b;
+            b = a;
+            a = t1.add(t2);
+        }
+
+        state[0] = state[0].add(a);
+        state[1] = state[1].add(b);
+        state[2] = state[2].add(c);
+        state[3] = state[3].add(d);
+        state[4] = state[4].add(e);
+        state[5] = state[5].add(f);
+        state[6] = state[6].add(g);
+        state[7] = state[7].add(h);
+    }
+}
@@ -0,0 +1,68 @@
+package blockchain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of block bodies in front of a {@link BlockBodyStore}.  The heap
+ * used by the bodies depends on the capacity of the cache and not on the length of the chain.
+ */
+class BlockBodyCache {
+    private final BlockBodyStore store;
+    private final Map<Long, TransactionColumns> bodies;
+    private long hits;
+    private long misses;
+
+    BlockBodyCache(BlockBodyStore store, int capacity) {
+        this.store = store;
+        this.bodies = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TransactionColumns> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /* Writes the body through to the store and keeps it, as it is likely to be read again soon */
+    synchronized void put(long blockId, TransactionColumns transactions) {
+        store.write(blockId, transactions);
+        bodies.put(blockId, transactions);
+    }
+
+    synchronized TransactionColumns get(long blockId) {
+        TransactionColumns transactions = bodies.get(blockId);
+
+        if (transactions != null) {
+            hits++;
+            return transactions;
+        }
+
+        misses++;
+        transactions = store.read(blockId);
+        bodies.put(blockId, transactions);
+
+        return transactions;
+    }
+
+    /* Drops the body from the cache and from the store */
+    synchronized void remove(long blockId) {
+        bodies.remove(blockId);
+        store.delete(blockId);
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized String getStats() {
+        long total = hits + misses;
+        double hitRate = total == 0 ? 0 : 100.0 * hits / total;
+
+        return String.format("Block body cache: %d cached, %d hits, %d misses, %.1f%% hit rate",
+                bodies.size(), hits, misses, hitRate);
+    }
+}
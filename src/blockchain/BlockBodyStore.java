@@ -0,0 +1,34 @@
+package blockchain;
+
+import java.io.File;
+
+/**
+ * Keeps the transactions of each block in its own file, so that the chain in memory only needs the headers.
+ */
+class BlockBodyStore {
+    private static final String DIRECTORY = "blocks";
+    private static final String FILE_NAME_FORMAT = "block-%d.bin";
+
+    private final File directory;
+
+    BlockBodyStore(String dataDirectory) {
+        this.directory = new File(dataDirectory, DIRECTORY);
+    }
+
+    void write(long blockId, TransactionColumns transactions) {
+        directory.mkdirs();
+        SerializationUtils.serialize(transactions, getFileName(blockId));
+    }
+
+    TransactionColumns read(long blockId) {
+        return (TransactionColumns) SerializationUtils.deserialize(getFileName(blockId));
+    }
+
+    void delete(long blockId) {
+        new File(getFileName(blockId)).delete();
+    }
+
+    private String getFileName(long blockId) {
+        return new File(directory, String.format(FILE_NAME_FORMAT, blockId)).getPath();
+    }
+}
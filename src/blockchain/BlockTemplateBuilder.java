@@ -0,0 +1,142 @@
+package blockchain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembles the next block while the current one is mined.  It keeps taking the pending transactions, drops
+ * those whose signature does not verify, and feeds each one into the digest the header commits to, see
+ * {@link Blockchain#digestOf}.  When the current block is sealed, {@link #take()} hands out the finished
+ * template, so all that is left to do for the next block is to fill in the previous hash and mine it.  The
+ * header itself cannot be hashed ahead, as the previous hash comes before the digest; see
+ * {@link MiningTask.Header} for what is done once a block instead of once a task.
+ * <p>
+ * The IDs of the transactions in the template stay pending, see {@link Blockchain#takePendingTransactions},
+ * and {@link #getBacklog()} tells how many transactions wait in it.
+ */
+class BlockTemplateBuilder implements Runnable {
+    private static final long MILLISECONDS_BETWEEN_POLLS = 20;
+
+    /* Everything of the next block but its ID, previous hash and magic number */
+    static final class Template {
+        private final long timestamp;
+        private final List<Transaction> transactions;
+        private final Hash256 transactionsDigest;
+
+        Template(long timestamp, List<Transaction> transactions, Hash256 transactionsDigest) {
+            this.timestamp = timestamp;
+            this.transactions = transactions;
+            this.transactionsDigest = transactionsDigest;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        Hash256 getTransactionsDigest() {
+            return transactionsDigest;
+        }
+    }
+
+    private final Blockchain blockchain;
+    private final SignatureVerifier signatureVerifier;
+    private volatile boolean running = true;
+    private long timestamp;
+    private List<Transaction> transactions;
+    private MessageDigest digest;
+    private long rejected;
+
+    BlockTemplateBuilder(Blockchain blockchain) {
+        this.blockchain = blockchain;
+        this.signatureVerifier = blockchain.getSignatureVerifier();
+        startTemplate();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            collect();
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(MILLISECONDS_BETWEEN_POLLS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /* Stops collecting and puts the transactions of the unfinished template back into the pending ones */
+    synchronized void stop() {
+        running = false;
+        blockchain.returnTakenTransactions(transactions);
+        startTemplate();
+    }
+
+    /**
+     * Waits until the template has at least one transaction, then hands it out and starts the next one
+     */
+    Template take() throws InterruptedException {
+        while (true) {
+            synchronized (this) {
+                collect();
+
+                if (!transactions.isEmpty()) {
+                    // the list is closed the way List.toString() closes it
+                    digest.update("]".getBytes(StandardCharsets.UTF_8));
+                    Template template = new Template(timestamp, transactions, Hash256.of(digest.digest()));
+                    startTemplate();
+
+                    return template;
+                }
+            }
+
+            TimeUnit.MILLISECONDS.sleep(MILLISECONDS_BETWEEN_POLLS);
+        }
+    }
+
+    /* Transactions dropped because their signature did not verify */
+    synchronized long getRejected() {
+        return rejected;
+    }
+
+    /* Transactions taken from the pending ones that wait in the template for the next block */
+    synchronized int getBacklog() {
+        return transactions.size();
+    }
+
+    private synchronized void collect() {
+        for (Transaction transaction : blockchain.takePendingTransactions()) {
+            if (!signatureVerifier.verify(transaction)) {
+                blockchain.releaseTakenTransactions(List.of(transaction));
+                rejected++;
+                continue;
+            }
+
+            String separator = transactions.isEmpty() ? "" : ", ";
+            digest.update((separator + transaction).getBytes(StandardCharsets.UTF_8));
+            transactions.add(transaction);
+        }
+    }
+
+    private void startTemplate() {
+        timestamp = new Date().getTime();
+        transactions = new ArrayList<>();
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        digest.update("[".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,38 +1,58 @@
 package blockchain;
 
-import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
-import java.nio.file.Files;
-import java.security.*;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public final class Blockchain implements Serializable {
 
+    /**
+     * The header of a block.  The transactions (the body) are only held here until the block is added
+     * to the chain, after that they are written to the {@link BlockBodyStore} and loaded on demand
+     * through the {@link BlockBodyCache}.  The header commits to the body through its digest, so
+     * the hash of a block can still be checked once its body has been pruned.
+     */
     static final class Block implements Serializable {
-        private static final long serialVersionUID = 5L;
+        private static final long serialVersionUID = 7L;
 
         private final long id;
         private final long timestamp;
         private long magicNumber;
-        private final String previousHash;
-        private String hash;
+        private final Hash256 previousHash;
+        private Hash256 hash;
         private long timeGenerating;
-        private final List<Transaction> transactions;
+        private transient List<Transaction> transactions;
+        private final Hash256 transactionsDigest;
+        private final long minTransactionId;
+        private final long maxTransactionId;
+        private boolean pruned;
         private String changeNMessage;
-        private Entity miner;
+        private String minerName;
         private String minerAward;
 
-        Block(long id, long timestamp, String previousHash, List<Transaction> transactions) {
+        Block(long id, long timestamp, Hash256 previousHash, List<Transaction> transactions) {
+            this(id, timestamp, previousHash, transactions, digestOf(transactions));
+        }
+
+        /**
+         * A block whose transactions were digested beforehand, see {@link BlockTemplateBuilder}
+         */
+        Block(long id, long timestamp, Hash256 previousHash, List<Transaction> transactions,
+              Hash256 transactionsDigest) {
             this.id = id;
             this.timestamp = timestamp;
             this.previousHash = previousHash;
             this.transactions = transactions;
+            this.transactionsDigest = transactionsDigest;
+            this.minTransactionId = transactions.stream().mapToLong(Transaction::getId).min().orElse(Long.MAX_VALUE);
+            this.maxTransactionId = transactions.stream().mapToLong(Transaction::getId).max().orElse(Long.MIN_VALUE);
         }
 
         long getId() {
@@ -47,27 +67,61 @@ public final class Blockchain implements Serializable {
             return magicNumber;
         }
 
-        String getHash() {
+        Hash256 getHash() {
             return hash;
         }
 
-        String getPreviousHash() {
+        Hash256 getPreviousHash() {
             return previousHash;
         }
 
-        List<Transaction> getTransactions() {
-            return transactions;
+        Hash256 getTransactionsDigest() {
+            return transactionsDigest;
+        }
+
+        long getMinTransactionId() {
+            return minTransactionId;
+        }
+
+        long getMaxTransactionId() {
+            return maxTransactionId;
+        }
+
+        boolean isEmpty() {
+            return maxTransactionId < minTransactionId;
         }
 
-        Entity getMiner() {
-            return miner;
+        /* False if the block certainly does not hold the transaction */
+        boolean mightHoldTransaction(long transactionId) {
+            return transactionId >= minTransactionId && transactionId <= maxTransactionId;
+        }
+
+        boolean isPruned() {
+            return pruned;
+        }
+
+        void setPruned(boolean pruned) {
+            this.pruned = pruned;
+        }
+
+        String getMinerName() {
+            return minerName;
         }
 
         String getMinerAward() {
             return minerAward;
         }
 
-        void setHash(String hash) {
+        /* Everything that goes into the hash except the magic number */
+        String getHashPrefix() {
+            return String.format("%s%s%s%s%s", id, timestamp, previousHash, transactionsDigest, minerAward);
+        }
+
+        Hash256 calculateHash() {
+            return StringUtil.sha256(getHashPrefix() + magicNumber);
+        }
+
+        void setHash(Hash256 hash) {
             this.hash = hash;
         }
 
@@ -83,19 +137,28 @@ public final class Blockchain implements Serializable {
             this.changeNMessage = changeNMessage;
         }
 
-        void setMiner(Entity miner) {
-            this.miner = miner;
+        void setMinerName(String minerName) {
+            this.minerName = minerName;
         }
 
         void setMinerAward(String minerAward) {
             this.minerAward = minerAward;
         }
 
-        @Override
-        public String toString() {
+        /* Hands over the body so that only the header stays in memory */
+        List<Transaction> detachTransactions() {
+            List<Transaction> detached = transactions;
+            transactions = null;
+
+            return detached;
+        }
+
+        String toString(List<Transaction> transactions) {
             String transactionString;
 
-            if (transactions.isEmpty()) {
+            if (pruned) {
+                transactionString = "Pruned";
+            } else if (transactions.isEmpty()) {
                 transactionString = "No transactions";
             } else {
                 transactionString = transactions.stream()
@@ -118,48 +181,273 @@ public final class Blockchain implements Serializable {
                     "%s%n" +
                     "Block was generating for %d seconds%n" +
                     "%s%n",
-                    miner == null ? "no name" : miner.getName(), minerAward, id, timestamp, magicNumber,
+                    minerName == null ? "no name" : minerName, minerAward, id, timestamp, magicNumber,
                     previousHash, hash, transactionString, timeGenerating, changeNMessage);
         }
     }
 
-    private static final long serialVersionUID = 4L;
+    private static final long serialVersionUID = 9L;
+    private static final String DEFAULT_DATA_DIRECTORY = ".";
+    private static final int BODY_CACHE_SIZE = 64;
+    private static final int SIGNATURE_CACHE_SIZE = 1 << 16;
+    private static final int SNAPSHOTS_TO_KEEP = 2;
+    /* How far above the next transaction ID a transaction from elsewhere may be */
+    private static final long MAX_TRANSACTION_ID_AHEAD = 1 << 20;
     public static final String MINER_AWARD_FORMAT = "%s gets %d VC";
     public static final int AWARD_AMOUNT = 100;
 
+    private final String dataDirectory;
     private final List<Block> chain = new ArrayList<>();
+    private transient BlockBodyCache bodyCache;
+    private transient SnapshotStore snapshotStore;
+    private transient StateSnapshot latestSnapshot;
+    /* The latest snapshot taken, which may not be written yet */
+    private transient StateSnapshot lastCapturedSnapshot;
+    /* Bodies of pruned blocks, to be deleted once the chain has been saved with the blocks marked as pruned */
+    private transient List<Long> prunedBodies = new ArrayList<>();
     private int numberOfZeros = 0;
-    private transient List<Transaction> pendingTransactions = new ArrayList<>();
+    /* Saved with the chain, together with those taken for a block, see initializePendingTransactions() */
+    private List<Transaction> pendingTransactions = new ArrayList<>();
+    private Map<Long, Transaction> takenTransactions = new LinkedHashMap<>();
+    private transient Set<Long> pendingTransactionIds = new HashSet<>();
+    private final TransactionIdFilter committedTransactionIds = new TransactionIdFilter();
     private final AtomicLong nextTransactionId = new AtomicLong(1);
+    /* The highest ID that went into the pending transactions, those after it must be higher */
+    private transient long lastAdmittedTransactionId;
     private transient long currentValidTransactionId = Long.MAX_VALUE;
-    private PublicKey publicKey;
+    private final VerifiedSignatureCache signatureCache = new VerifiedSignatureCache(SIGNATURE_CACHE_SIZE);
+    private transient SignatureVerifier signatureVerifier;
     private final List<Entity> entities = loadEntities();
 
+    public Blockchain() {
+        this(DEFAULT_DATA_DIRECTORY);
+    }
+
+    /**
+     * A chain that keeps its block bodies and snapshots under the given directory
+     */
+    public Blockchain(String dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        this.bodyCache = new BlockBodyCache(new BlockBodyStore(dataDirectory), BODY_CACHE_SIZE);
+        this.snapshotStore = new SnapshotStore(dataDirectory);
+    }
+
     int getNumberOfZeros() {
         return numberOfZeros;
     }
 
     synchronized void incrementNumberOfZeros() {
-        numberOfZeros++;
+        setNumberOfZeros(numberOfZeros + 1);
     }
 
     synchronized void decrementNumberOfZeros() {
-        numberOfZeros = Math.max(0, --numberOfZeros);
+        setNumberOfZeros(Math.max(0, numberOfZeros - 1));
+    }
+
+    private void setNumberOfZeros(int newNumberOfZeros) {
+        BlockchainEvents.DifficultyChange event = new BlockchainEvents.DifficultyChange();
+
+        if (newNumberOfZeros != numberOfZeros && event.shouldCommit()) {
+            event.oldNumberOfZeros = numberOfZeros;
+            event.newNumberOfZeros = newNumberOfZeros;
+            event.commit();
+        }
+
+        numberOfZeros = newNumberOfZeros;
     }
 
-    synchronized List<Transaction> getAndClearPendingTransactions() {
-        List<Transaction> transactions = new ArrayList<>(pendingTransactions);
+    /**
+     * Takes the pending transactions, leaving out any that was committed while it was pending.  The IDs of those
+     * taken stay pending until the block that holds them is added to the chain, or until they are given back
+     * with {@link #releaseTakenTransactions} or {@link #returnTakenTransactions}, so that the same ID cannot be
+     * admitted again in the meantime.
+     */
+    synchronized List<Transaction> takePendingTransactions() {
+        BlockchainEvents.MempoolDrain event = new BlockchainEvents.MempoolDrain();
+        event.begin();
+        List<Transaction> transactions = new ArrayList<>();
+
+        for (Transaction transaction : pendingTransactions) {
+            if (isCommitted(transaction.getId())) {
+                pendingTransactionIds.remove(transaction.getId());
+            } else {
+                transactions.add(transaction);
+                takenTransactions.put(transaction.getId(), transaction);
+            }
+        }
+
+        int alreadyCommitted = pendingTransactions.size() - transactions.size();
         pendingTransactions.clear();
+        commitMempoolDrain(event, transactions.size(), alreadyCommitted);
 
         return transactions;
     }
 
-    synchronized void addToPendingTransactions(Transaction transaction) {
+    /* For taken transactions that will not go into a block */
+    synchronized void releaseTakenTransactions(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            takenTransactions.remove(transaction.getId());
+            pendingTransactionIds.remove(transaction.getId());
+        }
+    }
+
+    /* Puts taken transactions back in front of those that came in since, so the IDs stay in order */
+    synchronized void returnTakenTransactions(List<Transaction> transactions) {
+        pendingTransactions.addAll(0, transactions);
+
+        for (Transaction transaction : transactions) {
+            takenTransactions.remove(transaction.getId());
+            pendingTransactionIds.add(transaction.getId());
+        }
+    }
+
+    /**
+     * Adds the transaction unless a transaction with the same ID is pending or committed already
+     *
+     * @return false if the transaction is a duplicate
+     */
+    synchronized boolean addToPendingTransactions(Transaction transaction) {
+        if (pendingTransactionIds.contains(transaction.getId()) || isCommitted(transaction.getId())) {
+            return false;
+        }
+
         pendingTransactions.add(transaction);
+        pendingTransactionIds.add(transaction.getId());
+
+        return true;
     }
 
-    boolean isPendingTransactions() {
-        return !pendingTransactions.isEmpty();
+    /**
+     * Whether a transaction with the ID is in the chain.  The {@link TransactionIdFilter} rules out almost every
+     * new ID; only when it cannot are the blocks that might hold the ID searched.  A pruned block that might hold
+     * it counts as holding it.
+     */
+    synchronized boolean isCommitted(long transactionId) {
+        if (!committedTransactionIds.mightContain(transactionId)) {
+            return false;
+        }
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Block block = chain.get(i);
+
+            if (!block.mightHoldTransaction(transactionId)) {
+                continue;
+            }
+
+            if (block.isPruned()) {
+                return true;
+            }
+
+            TransactionColumns transactions = getTransactionColumns(block);
+
+            for (int row = 0; row < transactions.size(); row++) {
+                if (transactions.getId(row) == transactionId) {
+                    return true;
+                }
+            }
+        }
+
+        committedTransactionIds.recordFalsePositive();
+
+        return false;
+    }
+
+    /**
+     * Adds a transaction whose ID was chosen elsewhere.  The ID has to be greater than every ID handed out so far,
+     * otherwise the transaction is refused, as the IDs in the chain must increase.  It may not be more than
+     * {@link #MAX_TRANSACTION_ID_AHEAD} above the next ID either, so that no client can run the IDs up to the
+     * end of their range.
+     */
+    synchronized boolean addToPendingTransactionsIfNewer(Transaction transaction) {
+        long ahead = transaction.getId() - nextTransactionId.get();
+
+        if (ahead < 0 || ahead > MAX_TRANSACTION_ID_AHEAD) {
+            return false;
+        }
+
+        if (!addToPendingTransactions(transaction)) {
+            return false;
+        }
+
+        nextTransactionId.set(transaction.getId() + 1);
+        lastAdmittedTransactionId = transaction.getId();
+
+        return true;
+    }
+
+    /**
+     * Admits a transaction whose ID was chosen elsewhere if, on top of the checks of
+     * {@link #addToPendingTransactionsIfNewer}, the sender can afford it given the pending transactions.  The
+     * amount is moved straight away, so the next transaction is checked against the new balances.
+     */
+    synchronized boolean admitTransaction(Transaction transaction) {
+        if (!isAffordable(transaction) || !addToPendingTransactionsIfNewer(transaction)) {
+            return false;
+        }
+
+        moveAmount(transaction);
+
+        return true;
+    }
+
+    /**
+     * Admits a transaction of this miner, whose ID was taken with {@link #getNextTransactionId()} before it was
+     * signed, outside the lock.  The same checks apply as for {@link #admitTransaction}, except that the ID only
+     * has to be higher than those admitted so far: a transaction that was overtaken by a higher ID while it was
+     * signed is refused.
+     */
+    synchronized boolean admitOwnTransaction(Transaction transaction) {
+        if (!isAffordable(transaction) || transaction.getId() <= lastAdmittedTransactionId ||
+                !addToPendingTransactions(transaction)) {
+            return false;
+        }
+
+        lastAdmittedTransactionId = transaction.getId();
+        moveAmount(transaction);
+
+        return true;
+    }
+
+    private boolean isAffordable(Transaction transaction) {
+        return transaction.getAmount() > 0 && transaction.getSender().getAmount() >= transaction.getAmount() &&
+                !transaction.getSender().getName().equals(transaction.getReceiver().getName());
+    }
+
+    private void moveAmount(Transaction transaction) {
+        transaction.getSender().decreaseAmountBy(transaction.getAmount());
+        transaction.getReceiver().increaseAmountBy(transaction.getAmount());
+    }
+
+    /* Drops any transaction that was committed while it was pending */
+    synchronized List<Transaction> getPendingTransactions(int maxTransactions) {
+        BlockchainEvents.MempoolDrain event = new BlockchainEvents.MempoolDrain();
+        event.begin();
+        int pending = pendingTransactions.size();
+        pendingTransactions.removeIf(t -> isCommitted(t.getId()) && pendingTransactionIds.remove(t.getId()));
+        List<Transaction> transactions =
+                new ArrayList<>(pendingTransactions.subList(0, Math.min(maxTransactions, pendingTransactions.size())));
+        commitMempoolDrain(event, transactions.size(), pending - pendingTransactions.size());
+
+        return transactions;
+    }
+
+    private void commitMempoolDrain(BlockchainEvents.MempoolDrain event, int taken, int alreadyCommitted) {
+        if (event.shouldCommit()) {
+            event.transactions = taken;
+            event.transactionsLeft = pendingTransactions.size();
+            event.alreadyCommitted = alreadyCommitted;
+            event.commit();
+        }
+    }
+
+    synchronized void removeFromPendingTransactions(Collection<Transaction> transactions) {
+        Set<Long> ids = transactions.stream().map(Transaction::getId).collect(Collectors.toSet());
+        pendingTransactions.removeIf(t -> ids.contains(t.getId()));
+        pendingTransactionIds.removeAll(ids);
+    }
+
+    synchronized int getNumberOfPendingTransactions() {
+        return pendingTransactions.size();
     }
 
     int getSize() {
@@ -167,19 +455,145 @@ public final class Blockchain implements Serializable {
     }
 
     synchronized void addBlockToChain(Block block) {
+        addBlockToChain(block, block.detachTransactions());
+    }
+
+    synchronized void addBlockToChain(Block block, List<Transaction> transactions) {
+        bodyCache.put(block.getId(), TransactionColumns.of(transactions));
         chain.add(block);
+
+        for (Transaction transaction : transactions) {
+            committedTransactionIds.add(transaction.getId());
+            // committed now, see takePendingTransactions()
+            takenTransactions.remove(transaction.getId());
+            pendingTransactionIds.remove(transaction.getId());
+        }
+    }
+
+    /**
+     * Drops all blocks after the given ID, together with their bodies and what they committed: the filter of
+     * committed IDs is rebuilt from the blocks that are left, and the balances and the next transaction ID go
+     * back to those of the blocks that are left with the pending transactions on top.  The transactions of the
+     * dropped blocks can be put back with {@link #returnToPendingTransactions}.
+     */
+    synchronized void truncateTo(long lastId) {
+        long firstRemovedTransactionId = Long.MAX_VALUE;
+
+        while (!chain.isEmpty() && getLastBlock().getId() > lastId) {
+            Block removed = chain.remove(chain.size() - 1);
+            bodyCache.remove(removed.getId());
+            firstRemovedTransactionId = Math.min(firstRemovedTransactionId, removed.getMinTransactionId());
+        }
+
+        rebuildCommittedTransactionIds(firstRemovedTransactionId);
+
+        if (latestSnapshot != null && !isBaseFor(latestSnapshot, getLastId())) {
+            latestSnapshot = findLatestSnapshot();
+        }
+
+        restorePendingState();
+    }
+
+    /**
+     * Drops the last block if it was never sealed, as when mining stopped before a task found it, and puts its
+     * transactions back in front of the pending ones
+     *
+     * @return false if the last block was sealed
+     */
+    synchronized boolean dropUnsealedBlock() {
+        if (chain.isEmpty() || getLastBlock().getHash() != null) {
+            return false;
+        }
+
+        Block unsealed = getLastBlock();
+        returnTakenTransactions(new ArrayList<>(getTransactions(unsealed)));
+        truncateTo(unsealed.getId() - 1);
+
+        return true;
+    }
+
+    /* The IDs increase along the chain, so only the last blocks can hold IDs the filter lost */
+    private void rebuildCommittedTransactionIds(long firstRemovedTransactionId) {
+        long knownUpToId = committedTransactionIds.removeFrom(firstRemovedTransactionId);
+        int first = chain.size();
+
+        while (first > 0 && (chain.get(first - 1).isEmpty() ||
+                chain.get(first - 1).getMaxTransactionId() > knownUpToId)) {
+            first--;
+        }
+
+        for (Block block : chain.subList(first, chain.size())) {
+            if (block.isEmpty()) {
+                continue;
+            }
+
+            if (block.isPruned()) {
+                // its IDs are gone, so every one up to its highest is a "maybe", as for a dropped partition
+                committedTransactionIds.addAllUpTo(block.getMaxTransactionId());
+                continue;
+            }
+
+            TransactionColumns transactions = getTransactionColumns(block);
+
+            for (int row = 0; row < transactions.size(); row++) {
+                committedTransactionIds.add(transactions.getId(row));
+            }
+        }
+    }
+
+    /* Those taken for a block template count as pending here, they have not been committed either */
+    private void restorePendingState() {
+        Map<String, Integer> balances = new LinkedHashMap<>();
+        long restoredNextTransactionId = replayCommittedState(getLastId(), balances);
+        List<Transaction> pending = new ArrayList<>(takenTransactions.values());
+        pending.addAll(pendingTransactions);
+
+        for (Transaction transaction : pending) {
+            balances.merge(transaction.getSender().getName(), -transaction.getAmount(), Integer::sum);
+            balances.merge(transaction.getReceiver().getName(), transaction.getAmount(), Integer::sum);
+            restoredNextTransactionId = Math.max(restoredNextTransactionId, transaction.getId() + 1);
+        }
+
+        entities.forEach(e -> e.setAmount(balances.getOrDefault(e.getName(), 0)));
+        nextTransactionId.set(restoredNextTransactionId);
+        lastAdmittedTransactionId = restoredNextTransactionId - 1;
+    }
+
+    /**
+     * Puts the transactions of blocks dropped by {@link #truncateTo} back into the pending transactions, unless
+     * they are pending or committed already.  Their IDs were handed out before, so the next ID goes above them.
+     */
+    synchronized void returnToPendingTransactions(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            if (addToPendingTransactions(transaction)) {
+                nextTransactionId.accumulateAndGet(transaction.getId() + 1, Math::max);
+                lastAdmittedTransactionId = Math.max(lastAdmittedTransactionId, transaction.getId());
+            }
+        }
+    }
+
+    synchronized Block getBlock(long id) {
+        return chain.get((int) id - 1);
+    }
+
+    List<Transaction> getTransactions(Block block) {
+        return getTransactionColumns(block).asTransactions();
+    }
+
+    TransactionColumns getTransactionColumns(Block block) {
+        return bodyCache.get(block.getId());
     }
 
     synchronized Block getLastBlock() {
         return chain.get(chain.size() - 1);
     }
 
-    synchronized String getLastHash() {
-        return chain.isEmpty() ? "none" : getLastBlock().getHash();
+    synchronized Hash256 getLastHash() {
+        return chain.isEmpty() ? Hash256.ZERO : getLastBlock().getHash();
     }
 
-    synchronized String getLastPreviousHash() {
-        return chain.isEmpty() ? "none" : getLastBlock().getPreviousHash();
+    synchronized Hash256 getLastPreviousHash() {
+        return chain.isEmpty() ? Hash256.ZERO : getLastBlock().getPreviousHash();
     }
 
     synchronized long getNextId() {
@@ -194,8 +608,8 @@ public final class Blockchain implements Serializable {
         return getLastBlock().getTimestamp();
     }
 
-    synchronized List<Transaction> getLastTransactions() {
-        return getLastBlock().getTransactions();
+    synchronized Hash256 getLastTransactionsDigest() {
+        return getLastBlock().getTransactionsDigest();
     }
 
     synchronized void setLastChangeNMessage(String changeNMessage) {
@@ -203,65 +617,312 @@ public final class Blockchain implements Serializable {
     }
 
     void printLastNBlocks(int noOfBlocks) {
-        chain.stream().skip(Math.max(0, chain.size() - noOfBlocks)).forEach(System.out::println);
+        chain.stream()
+                .skip(Math.max(0, chain.size() - noOfBlocks))
+                .forEach(block -> System.out.println(block.toString(block.isPruned() ? null : getTransactions(block))));
+    }
+
+    String getBodyCacheStats() {
+        return bodyCache.getStats();
+    }
+
+    long getBodyCacheHits() {
+        return bodyCache.getHits();
+    }
+
+    long getBodyCacheMisses() {
+        return bodyCache.getMisses();
+    }
+
+    /* Shared by everything that verifies signatures, so they share the cache of verified signatures */
+    synchronized SignatureVerifier getSignatureVerifier() {
+        if (signatureVerifier == null) {
+            signatureVerifier = new SignatureVerifier(signatureCache);
+        }
+
+        return signatureVerifier;
+    }
+
+    String getTransactionIdFilterStats() {
+        return committedTransactionIds.getStats();
+    }
+
+    String getSignatureCacheStats() {
+        return signatureCache.getStats();
+    }
+
+    /**
+     * Takes a snapshot of the balances and the next transaction ID at the last block in the chain, which has to
+     * happen while the last block is the one to snapshot; {@link #writeSnapshot} writes it to disk.  The balances
+     * are the committed ones, see {@link #replayCommittedState}, not those of the entities, which already include
+     * the pending transactions.
+     */
+    synchronized StateSnapshot captureSnapshot() {
+        Block lastBlock = getLastBlock();
+        Map<String, Integer> balances = new LinkedHashMap<>();
+        long committedNextTransactionId = replayCommittedState(lastBlock.getId(), balances);
+        lastCapturedSnapshot = new StateSnapshot(lastBlock.getId(), lastBlock.getHash(), balances,
+                committedNextTransactionId);
+
+        return lastCapturedSnapshot;
+    }
+
+    /**
+     * Sets the balances of the entities and the next transaction ID to the state committed by the chain, which
+     * drops whatever the transactions that were pending when the chain was saved had done to them
+     */
+    synchronized void restoreCommittedState() {
+        if (chain.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> balances = new LinkedHashMap<>();
+        long committedNextTransactionId = replayCommittedState(getLastId(), balances);
+        entities.forEach(e -> e.setAmount(balances.getOrDefault(e.getName(), 0)));
+        nextTransactionId.set(Math.max(nextTransactionId.get(), committedNextTransactionId));
+    }
+
+    /**
+     * Fills in the balances after the given block: those of the latest snapshot at or below it, or the initial
+     * ones, with the transactions and miner awards of the blocks after that applied.  Those blocks are never
+     * pruned, as pruning stays behind the snapshots.
+     *
+     * @return the next transaction ID after the block
+     */
+    private long replayCommittedState(long height, Map<String, Integer> balances) {
+        StateSnapshot base = isBaseFor(lastCapturedSnapshot, height) ? lastCapturedSnapshot : latestSnapshot;
+        long committedNextTransactionId = 1;
+
+        if (isBaseFor(base, height)) {
+            balances.putAll(base.getBalances());
+            committedNextTransactionId = base.getNextTransactionId();
+        } else {
+            base = null;
+            loadEntities().forEach(e -> balances.put(e.getName(), e.getAmount()));
+        }
+
+        for (long id = base == null ? 1 : base.getHeight() + 1; id <= height; id++) {
+            Block block = getBlock(id);
+
+            if (block.isPruned()) {
+                throw new IllegalStateException("Block " + id + " is pruned and no snapshot covers it");
+            }
+
+            TransactionColumns transactions = getTransactionColumns(block);
+
+            for (int row = 0; row < transactions.size(); row++) {
+                int amount = transactions.getAmount(row);
+                balances.merge(transactions.getEntityName(transactions.getSender(row)), -amount, Integer::sum);
+                balances.merge(transactions.getEntityName(transactions.getReceiver(row)), amount, Integer::sum);
+                committedNextTransactionId = Math.max(committedNextTransactionId, transactions.getId(row) + 1);
+            }
+
+            if (block.getMinerName() != null) {
+                balances.merge(block.getMinerName(), AWARD_AMOUNT, Integer::sum);
+            }
+        }
+
+        return committedNextTransactionId;
+    }
+
+    /* Whether the snapshot is of a block at or below the height, and of the block in the chain at its height */
+    private boolean isBaseFor(StateSnapshot snapshot, long height) {
+        return snapshot != null && snapshot.getHeight() <= height &&
+                getBlock(snapshot.getHeight()).getHash().equals(snapshot.getLastBlockHash());
+    }
+
+    /**
+     * Writes a snapshot taken with {@link #captureSnapshot()} to disk, which can be left to another thread.  Older
+     * snapshots stay until a saved chain no longer needs them, see {@link #deleteOldSnapshots}.
+     */
+    void writeSnapshot(StateSnapshot snapshot) {
+        snapshotStore.write(snapshot);
+
+        synchronized (this) {
+            if (latestSnapshot == null || snapshot.getHeight() >= latestSnapshot.getHeight()) {
+                latestSnapshot = snapshot;
+            }
+        }
+    }
+
+    /**
+     * Once the chain has been saved with the given last block: a later start uses the newest snapshot at or
+     * below it, which covers the blocks it has pruned, so only older ones than the newest few go
+     */
+    void deleteOldSnapshots(long savedHeight) {
+        snapshotStore.deleteAllButNewest(SNAPSHOTS_TO_KEEP, savedHeight);
+    }
+
+    /**
+     * The newest snapshot on disk that belongs to the chain.  Those above its last block, or of another block at
+     * their height, or that cannot be read or verified, are left from a run that stopped before it saved the
+     * chain again, and are deleted.
+     */
+    private StateSnapshot findLatestSnapshot() {
+        for (long height : snapshotStore.getHeights()) {
+            StateSnapshot snapshot = height <= getLastId() ? snapshotStore.read(height) : null;
+
+            if (snapshot != null && snapshot.verify() && isBaseFor(snapshot, getLastId())) {
+                return snapshot;
+            }
+
+            System.out.printf("Snapshot %d does not belong to the saved chain, it is deleted%n", height);
+            snapshotStore.delete(height);
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks all blocks that are more than {@code retentionBlocks} blocks older than the latest snapshot as
+     * pruned, so that only their headers are kept.  The bodies stay on disk until the chain has been saved with
+     * the marks, see {@link #takePrunedBodies}, so a crash in between cannot leave a block without a body that is
+     * not marked as pruned.  Does nothing if no snapshot has been taken.
+     */
+    synchronized int pruneBodies(int retentionBlocks) {
+        if (latestSnapshot == null) {
+            return 0;
+        }
+
+        // the last block never, the next start needs it
+        long pruneUpToId = Math.min(latestSnapshot.getHeight() - retentionBlocks, getLastId() - 1);
+        int prunedBlocks = 0;
+
+        for (Block block : chain) {
+            if (block.getId() > pruneUpToId) {
+                break;
+            }
+
+            if (!block.isPruned()) {
+                block.setPruned(true);
+                prunedBodies.add(block.getId());
+                prunedBlocks++;
+            }
+        }
+
+        return prunedBlocks;
+    }
+
+    /* The bodies pruned since the last call, to be taken while the chain is saved and deleted after that */
+    synchronized List<Long> takePrunedBodies() {
+        List<Long> taken = prunedBodies;
+        prunedBodies = new ArrayList<>();
+
+        return taken;
+    }
+
+    synchronized void deleteBodies(List<Long> blockIds) {
+        blockIds.forEach(bodyCache::remove);
     }
 
     boolean validate() {
-        publicKey = getPublicKeyFromDisk();
+        currentValidTransactionId = Long.MAX_VALUE;
+
+        if (!validateSnapshot()) {
+            System.out.println("Snapshot did not validate");
+            return false;
+        }
 
         for (int i = chain.size() - 1; i >= 0; i--) {
-            Block currentBlock = chain.get(i);
-            String stringToHash = String.format("%s%s%s%s%s%d",
-                    currentBlock.getId(), currentBlock.getTimestamp(), currentBlock.getPreviousHash(),
-                    currentBlock.getTransactions(), currentBlock.getMinerAward(), currentBlock.getMagicNumber());
-            String checkHash = StringUtil.applySha256(stringToHash);
-
-            if (!currentBlock.getHash().equals(checkHash)) {
-                System.out.println("Hash did not validate");
+            BlockchainEvents.BlockValidation event = new BlockchainEvents.BlockValidation();
+            event.begin();
+            boolean valid = validateBlock(i, event);
+
+            if (event.shouldCommit()) {
+                event.blockId = chain.get(i).getId();
+                event.pruned = chain.get(i).isPruned();
+                event.valid = valid;
+                event.commit();
+            }
+
+            if (!valid) {
                 return false;
             }
+        }
 
-            if (i == 0) {
-                if (!"0".equals(currentBlock.getPreviousHash())) {
-                    return false;
-                }
-            } else {
-                Block previousBlock = chain.get(i - 1);
+        return true;
+    }
 
-                if (!previousBlock.getHash().equals(currentBlock.getPreviousHash())) {
-                    System.out.println("Previous hash did not validate");
-                    return false;
-                }
+    private boolean validateBlock(int i, BlockchainEvents.BlockValidation event) {
+        Block currentBlock = chain.get(i);
+        if (!currentBlock.getHash().equals(currentBlock.calculateHash())) {
+            System.out.println("Hash did not validate");
+            return false;
+        }
 
-                boolean transactionsValid = validateTransactions(currentBlock.getTransactions());
+        if (i == 0) {
+            return Hash256.ZERO.equals(currentBlock.getPreviousHash());
+        }
 
-                if (!transactionsValid) {
-                    System.out.println("Transactions did not validate");
-                    return false;
-                }
-            }
+        Block previousBlock = chain.get(i - 1);
+
+        if (!previousBlock.getHash().equals(currentBlock.getPreviousHash())) {
+            System.out.println("Previous hash did not validate");
+            return false;
+        }
+
+        // a pruned body is vouched for by the snapshot
+        if (currentBlock.isPruned()) {
+            return true;
+        }
+
+        TransactionColumns transactions = getTransactionColumns(currentBlock);
+        event.transactions = transactions.size();
+
+        if (!currentBlock.getTransactionsDigest().equals(transactions.digest())) {
+            System.out.println("Transactions digest did not validate");
+            return false;
+        }
+
+        boolean transactionsValid = validateTransactions(transactions);
+
+        if (!transactionsValid) {
+            System.out.println("Transactions did not validate");
+            return false;
         }
 
         return true;
     }
 
-    private boolean validateTransactions(List<Transaction> transactions) {
+    private boolean validateSnapshot() {
+        long prunedUpToId = chain.stream()
+                .filter(Block::isPruned)
+                .mapToLong(Block::getId)
+                .max()
+                .orElse(0);
+
+        if (latestSnapshot == null) {
+            return prunedUpToId == 0;
+        }
+
+        long height = latestSnapshot.getHeight();
+
+        if (!latestSnapshot.verify() || height > chain.size() || prunedUpToId > height) {
+            return false;
+        }
+
+        return chain.get((int) height - 1).getHash().equals(latestSnapshot.getLastBlockHash());
+    }
+
+    static Hash256 digestOf(List<Transaction> transactions) {
+        return StringUtil.sha256(String.valueOf(transactions));
+    }
+
+    private boolean validateTransactions(TransactionColumns transactions) {
         for (int i = transactions.size() - 1; i >= 0; i--) {
-            Transaction transaction = transactions.get(i);
+            long id = transactions.getId(i);
 
             // check that message ID increases (tricky, cuz we're going backwards)
-            if (transaction.getId() >= currentValidTransactionId) {
+            if (id >= currentValidTransactionId) {
                 System.out.printf("Transaction ID does not increase, this ID = %d, current ID = %d%n",
-                        transaction.getId(), currentValidTransactionId);
+                        id, currentValidTransactionId);
                 return false;
             }
 
-            currentValidTransactionId = transaction.getId();
+            currentValidTransactionId = id;
 
             // check that signature is valid
-            String data = String.format("%d%s%s%d", transaction.getId(), transaction.getSender().getName(),
-                    transaction.getReceiver().getName(), transaction.getAmount());
-            if (!verifySignature(data, transaction.getSignature())) {
+            if (!getSignatureVerifier().verify(transactions, i)) {
                 System.out.println("Transaction signature is not valid");
                 return false;
             }
@@ -270,51 +931,44 @@ public final class Blockchain implements Serializable {
         return true;
     }
 
-    private boolean verifySignature(String data, byte[] signature) {
-        try {
-            Signature sig = Signature.getInstance(SecurityKeyPair.SIGNATURE_ALGORITHM);
-            sig.initVerify(publicKey);
-            sig.update(data.getBytes());
-
-            return sig.verify(signature);
-        } catch(NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private PublicKey getPublicKeyFromDisk() {
-        try {
-            byte[] keyBytes = Files.readAllBytes(new File(SecurityKeyPair.PATH_TO_PUBLIC_KEY).toPath());
-            X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
-            KeyFactory kf = KeyFactory.getInstance(SecurityKeyPair.KEY_PAIR_ALGORITHM);
-
-            return kf.generatePublic(spec);
-        } catch(IOException | NoSuchAlgorithmException | InvalidKeySpecException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     long getNextTransactionId() {
         return nextTransactionId.getAndIncrement();
     }
 
-    synchronized void updateTransactionId() {
-        if (chain.size() < 2) {
-            nextTransactionId.set(1);
-            return;
-        }
-
-        List<Transaction> transactions = getLastBlock().getTransactions();
-        Transaction lastTransaction = transactions.get(Math.max(0, transactions.size() - 1));
-        nextTransactionId.set(lastTransaction.getId() + 1);
-        currentValidTransactionId = Long.MAX_VALUE;
+    /* The next transaction ID, without taking it */
+    long peekNextTransactionId() {
+        return nextTransactionId.get();
     }
 
+    /**
+     * After a load, makes the transactions that were pending, or taken for a block template, when the chain was
+     * saved pending again, in the order of their IDs, unless they were committed after all.  The balances and the
+     * next transaction ID are then those of the chain with them on top.
+     */
     synchronized void initializePendingTransactions() {
+        List<Transaction> saved = new ArrayList<>(takenTransactions.values());
+        saved.addAll(pendingTransactions);
         pendingTransactions = new ArrayList<>();
+        takenTransactions = new LinkedHashMap<>();
+        pendingTransactionIds = new HashSet<>();
+        saved.forEach(this::addToPendingTransactions);
+        restorePendingState();
+    }
+
+    synchronized void initializeStorage() {
+        bodyCache = new BlockBodyCache(new BlockBodyStore(dataDirectory), BODY_CACHE_SIZE);
+        snapshotStore = new SnapshotStore(dataDirectory);
+        latestSnapshot = findLatestSnapshot();
+        lastCapturedSnapshot = latestSnapshot;
+        prunedBodies = new ArrayList<>();
+
+        // bodies left behind by a crash between saving the chain and deleting them
+        chain.stream()
+                .filter(Block::isPruned)
+                .forEach(block -> bodyCache.remove(block.getId()));
     }
 
-    private List<Entity> loadEntities() {
+    static List<Entity> loadEntities() {
         List<Entity> entities = new ArrayList<>();
         entities.add(new Entity("miner1", Entity.Type.MINER, 100));
         entities.add(new Entity("miner2", Entity.Type.MINER, 100));
@@ -0,0 +1,156 @@
+package blockchain;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events of the miner, see blockchain.jfc for settings that record them.  Events are
+ * created and begun unconditionally, but their fields are only filled in and committed when
+ * {@link Event#shouldCommit()} says so, which the JIT reduces to next to nothing while recording is off.
+ */
+final class BlockchainEvents {
+
+    private BlockchainEvents() {
+    }
+
+    @Name("blockchain.MiningBatch")
+    @Label("Mining Batch")
+    @Category({ "Blockchain", "Mining" })
+    @Description("Magic numbers tried by one mining task since its previous batch")
+    @StackTrace(false)
+    static final class MiningBatch extends Event {
+        @Label("Block ID")
+        @Description("The block being mined, which is the mining epoch")
+        long blockId;
+
+        @Label("Miner")
+        String miner;
+
+        @Label("Number of Zeros")
+        int numberOfZeros;
+
+        @Label("Magic Numbers Tried")
+        long noncesTried;
+    }
+
+    @Name("blockchain.BlockFound")
+    @Label("Block Found")
+    @Category({ "Blockchain", "Mining" })
+    @Description("A mining task found a magic number for the block")
+    @StackTrace(false)
+    static final class BlockFound extends Event {
+        @Label("Block ID")
+        long blockId;
+
+        @Label("Miner")
+        String miner;
+
+        @Label("Magic Number")
+        long magicNumber;
+    }
+
+    @Name("blockchain.BlockCommitted")
+    @Label("Block Committed")
+    @Category({ "Blockchain", "Mining" })
+    @Description("The miner accepted a found block and sealed it in the chain")
+    @StackTrace(false)
+    static final class BlockCommitted extends Event {
+        @Label("Block ID")
+        long blockId;
+
+        @Label("Miner")
+        String miner;
+
+        @Label("Commit Latency")
+        @Description("From the mining task finding the block to the miner sealing it")
+        @Timespan(Timespan.NANOSECONDS)
+        long commitLatency;
+    }
+
+    @Name("blockchain.DifficultyChange")
+    @Label("Difficulty Change")
+    @Category({ "Blockchain", "Mining" })
+    @StackTrace(false)
+    static final class DifficultyChange extends Event {
+        @Label("Old Number of Zeros")
+        int oldNumberOfZeros;
+
+        @Label("New Number of Zeros")
+        int newNumberOfZeros;
+    }
+
+    @Name("blockchain.MempoolDrain")
+    @Label("Mempool Drain")
+    @Category({ "Blockchain", "Mempool" })
+    @Description("Pending transactions taken for a new block")
+    @StackTrace(false)
+    static final class MempoolDrain extends Event {
+        @Label("Transactions Taken")
+        int transactions;
+
+        @Label("Transactions Left")
+        int transactionsLeft;
+
+        @Label("Already Committed")
+        @Description("Pending transactions left out because they were committed meanwhile")
+        int alreadyCommitted;
+    }
+
+    @Name("blockchain.BlockValidation")
+    @Label("Block Validation")
+    @Category({ "Blockchain", "Validation" })
+    @StackTrace(false)
+    static final class BlockValidation extends Event {
+        @Label("Block ID")
+        long blockId;
+
+        @Label("Transactions")
+        int transactions;
+
+        @Label("Pruned")
+        boolean pruned;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("blockchain.Signature")
+    @Label("Signature")
+    @Category({ "Blockchain", "Signatures" })
+    @Description("A transaction signature was created or verified")
+    @StackTrace(false)
+    static final class SignatureOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Cached")
+        @Description("The signature was found in the cache of verified signatures")
+        boolean cached;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("blockchain.Serialization")
+    @Label("Serialization")
+    @Category({ "Blockchain", "Storage" })
+    @Description("An object was saved to or loaded from a file")
+    @StackTrace(false)
+    static final class Serialization extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("File")
+        String fileName;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,180 @@
+package blockchain;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the cores between mining, transaction intake (the signature verifiers of the
+ * {@link TransactionIngressServer}) and persistence (snapshots and pruning), and shifts them as the load
+ * changes.  Once a second it looks at the verification backlog, the mempool depth (the pending transactions and
+ * those waiting in the {@link BlockTemplateBuilder}), the persistence backlog and the hash rate:
+ * <ul>
+ *     <li>when transactions pile up, intake gets another thread, and gives one back once they are drained,</li>
+ *     <li>persistence gets another thread while writes are waiting,</li>
+ *     <li>mining gets the rest, unless the last thread it was given did not raise the hash rate.</li>
+ * </ul>
+ * Each pool stays within its minimum and maximum, set with -Dblockchain.scheduler.[mining|intake|persistence]
+ * .[min|max], and the whole within -Dblockchain.scheduler.cpus, all the cores by default.
+ */
+class CpuScheduler {
+    private static final long INTERVAL_MILLIS = 1000;
+    private static final int VERIFY_BACKLOG_HIGH = 4;
+    private static final int MEMPOOL_HIGH = 500;
+    private static final int MEMPOOL_LOW = 50;
+    /* The share of a thread's hash rate that another mining thread has to add to be worth it */
+    private static final double MIN_MARGINAL_GAIN = 0.5;
+    private static final double MIN_HASH_RATE_TO_JUDGE = 10_000;
+    /* How long a ceiling on the mining threads holds before mining may try more threads again */
+    private static final int CEILING_TICKS = 60;
+
+    private static final class Limits {
+        private final int min;
+        private final int max;
+
+        Limits(String pool, int min, int max) {
+            this.min = Integer.getInteger("blockchain.scheduler." + pool + ".min", min);
+            this.max = Math.max(this.min, Integer.getInteger("blockchain.scheduler." + pool + ".max", max));
+        }
+
+        int clamp(int threads) {
+            return Math.max(min, Math.min(max, threads));
+        }
+    }
+
+    private final int cpus = Integer.getInteger("blockchain.scheduler.cpus",
+            Runtime.getRuntime().availableProcessors());
+    private final Limits miningLimits = new Limits("mining", 1, cpus);
+    private final Limits intakeLimits = new Limits("intake", 1, cpus);
+    private final Limits persistenceLimits = new Limits("persistence", 1, 2);
+    private final Blockchain blockchain;
+    private final TransactionIngressServer ingressServer;
+    private final BlockTemplateBuilder templateBuilder;
+    private final ThreadPoolExecutor persistenceExecutor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cpu-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile int miningThreads;
+    private int intakeThreads;
+    private int persistenceThreads;
+    private int miningCeiling = Integer.MAX_VALUE;
+    private int ticksUnderCeiling;
+    private long lastHashesTried = MiningTask.getHashesTried();
+    private double lastHashRate;
+    private int lastMiningThreads;
+    private String lastDecision = "";
+
+    /**
+     * @param ingressServer null if there is none, then intake gets no threads
+     */
+    CpuScheduler(Blockchain blockchain, TransactionIngressServer ingressServer,
+                 BlockTemplateBuilder templateBuilder) {
+        this.blockchain = blockchain;
+        this.ingressServer = ingressServer;
+        this.templateBuilder = templateBuilder;
+        this.persistenceThreads = persistenceLimits.min;
+        this.persistenceExecutor = new ThreadPoolExecutor(persistenceThreads, persistenceThreads,
+                INTERVAL_MILLIS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        this.intakeThreads = ingressServer == null ? 0 : intakeLimits.min;
+        this.miningThreads = miningLimits.clamp(cpus - intakeThreads - persistenceThreads);
+        apply();
+    }
+
+    void start() {
+        timer.scheduleAtFixedRate(this::reschedule, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /* Stops rescheduling and waits for the persistence work that was handed in */
+    void stop() throws InterruptedException {
+        timer.shutdownNow();
+        persistenceExecutor.shutdown();
+        persistenceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /* The number of mining tasks to start on the next block */
+    int getMiningThreads() {
+        return miningThreads;
+    }
+
+    /* The most mining threads there will ever be, to size the mining pool by */
+    int getMaxMiningThreads() {
+        return miningLimits.max;
+    }
+
+    /* For writing snapshots and pruning, off the mining thread */
+    void persist(Runnable task) {
+        persistenceExecutor.execute(task);
+    }
+
+    private synchronized void reschedule() {
+        int mempoolDepth = blockchain.getNumberOfPendingTransactions() + templateBuilder.getBacklog();
+        int verifyBacklog = ingressServer == null ? 0 : ingressServer.getVerifyBacklog();
+        int persistenceBacklog = persistenceExecutor.getQueue().size();
+        long hashesTried = MiningTask.getHashesTried();
+        double hashRate = (hashesTried - lastHashesTried) * 1000.0 / INTERVAL_MILLIS;
+        lastHashesTried = hashesTried;
+
+        if (ingressServer != null) {
+            if (verifyBacklog >= VERIFY_BACKLOG_HIGH || mempoolDepth >= MEMPOOL_HIGH) {
+                intakeThreads = intakeLimits.clamp(intakeThreads + 1);
+            } else if (verifyBacklog == 0 && mempoolDepth <= MEMPOOL_LOW) {
+                intakeThreads = intakeLimits.clamp(intakeThreads - 1);
+            }
+        }
+
+        persistenceThreads = persistenceLimits.clamp(persistenceThreads + (persistenceBacklog > 0 ? 1 : -1));
+        updateMiningCeiling(hashRate);
+        lastHashRate = hashRate;
+        lastMiningThreads = miningThreads;
+        miningThreads = miningLimits.clamp(Math.min(miningCeiling, cpus - intakeThreads - persistenceThreads));
+        apply();
+
+        String decision = String.format("mining %d, intake %d, persistence %d", miningThreads, intakeThreads,
+                persistenceThreads);
+
+        if (!decision.equals(lastDecision)) {
+            System.out.printf("Scheduler: %s (mempool %d, verify backlog %d, persistence backlog %d, " +
+                    "%,.0f hashes/s)%n", decision, mempoolDepth, verifyBacklog, persistenceBacklog, hashRate);
+            lastDecision = decision;
+        }
+    }
+
+    /* Caps mining at its previous number of threads if the last one added did not pay for itself */
+    private void updateMiningCeiling(double hashRate) {
+        if (miningCeiling != Integer.MAX_VALUE && ++ticksUnderCeiling >= CEILING_TICKS) {
+            miningCeiling = Integer.MAX_VALUE;
+        }
+
+        if (miningThreads <= lastMiningThreads || lastMiningThreads == 0 ||
+                Math.min(hashRate, lastHashRate) < MIN_HASH_RATE_TO_JUDGE) {
+            return;
+        }
+
+        double perThread = lastHashRate / lastMiningThreads;
+        double gain = (hashRate - lastHashRate) / (miningThreads - lastMiningThreads);
+
+        if (gain < MIN_MARGINAL_GAIN * perThread) {
+            miningCeiling = lastMiningThreads;
+            ticksUnderCeiling = 0;
+        }
+    }
+
+    private void apply() {
+        if (ingressServer != null) {
+            ingressServer.setVerifyThreads(intakeThreads);
+        }
+
+        // the maximum first, as the core size may not exceed it
+        if (persistenceThreads > persistenceExecutor.getMaximumPoolSize()) {
+            persistenceExecutor.setMaximumPoolSize(persistenceThreads);
+            persistenceExecutor.setCorePoolSize(persistenceThreads);
+        } else {
+            persistenceExecutor.setCorePoolSize(persistenceThreads);
+            persistenceExecutor.setMaximumPoolSize(persistenceThreads);
+        }
+    }
+}
@@ -29,6 +29,10 @@ public class Entity implements Serializable {
         return amount;
     }
 
+    public void setAmount(int amount) {
+        this.amount = amount;
+    }
+
     public void increaseAmountBy(int increase) {
         amount += increase;
     }
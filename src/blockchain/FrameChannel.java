@@ -0,0 +1,134 @@
+package blockchain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A non-blocking socket channel that sends and receives length-prefixed frames.  Each frame is a four byte
+ * length followed by that many bytes of payload.  Frames may be queued from any thread, but reading and
+ * flushing belong to the thread that owns the selector.
+ */
+class FrameChannel {
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private SelectionKey key;
+
+    FrameChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    static ByteBuffer encode(byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + payload.length);
+        frame.putInt(payload.length).put(payload).flip();
+
+        return frame;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Reads what is available and hands every complete frame to the consumer.
+     *
+     * @return false if the peer has closed the connection
+     */
+    boolean read(Consumer<byte[]> frameConsumer) throws IOException {
+        if (channel.read(readBuffer) == -1) {
+            return false;
+        }
+
+        readBuffer.flip();
+
+        while (readBuffer.remaining() >= Integer.BYTES) {
+            int length = readBuffer.getInt(readBuffer.position());
+
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+
+            if (readBuffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+
+            readBuffer.getInt();
+            byte[] frame = new byte[length];
+            readBuffer.get(frame);
+            frameConsumer.accept(frame);
+        }
+
+        makeRoomForNextFrame();
+
+        return true;
+    }
+
+    private void makeRoomForNextFrame() {
+        if (readBuffer.remaining() >= Integer.BYTES) {
+            int frameSize = Integer.BYTES + readBuffer.getInt(readBuffer.position());
+
+            if (frameSize > readBuffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(frameSize);
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+                return;
+            }
+        }
+
+        readBuffer.compact();
+    }
+
+    /* The frame must be encoded, and is not copied, so pass a duplicate when sending one frame to many channels */
+    void send(ByteBuffer frame) {
+        writeQueue.add(frame);
+    }
+
+    boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    /**
+     * Writes as much of the queued frames as the socket will take.
+     *
+     * @return true if everything was written
+     */
+    boolean flush() throws IOException {
+        ByteBuffer frame;
+
+        while ((frame = writeQueue.peek()) != null) {
+            channel.write(frame);
+
+            if (frame.hasRemaining()) {
+                return false;
+            }
+
+            writeQueue.poll();
+        }
+
+        return true;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to do with the channel
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package blockchain;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Exchanges frames with any number of peers over non-blocking loopback sockets, both the ones that connect
+ * to it and the ones it connects to.  A single selector thread accepts, reads and writes; received frames
+ * are handed to the frame handler on that thread.  A peer whose frame the handler throws on is disconnected,
+ * the other peers are not affected.
+ */
+class FrameTransport implements Runnable {
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final BiConsumer<FrameChannel, byte[]> frameHandler;
+    private final Set<FrameChannel> peers = ConcurrentHashMap.newKeySet();
+    private final Queue<FrameChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private volatile Consumer<FrameChannel> disconnectHandler = peer -> { };
+    private volatile boolean running = true;
+
+    /* Listens on an ephemeral port */
+    FrameTransport(BiConsumer<FrameChannel, byte[]> frameHandler) throws IOException {
+        this(0, frameHandler);
+    }
+
+    FrameTransport(int port, BiConsumer<FrameChannel, byte[]> frameHandler) throws IOException {
+        this.frameHandler = frameHandler;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /* Called on the selector thread when a peer goes away */
+    void setDisconnectHandler(Consumer<FrameChannel> disconnectHandler) {
+        this.disconnectHandler = disconnectHandler;
+    }
+
+    InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    void connect(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        pendingRegistrations.add(new FrameChannel(channel));
+        selector.wakeup();
+    }
+
+    void send(FrameChannel peer, ByteBuffer frame) {
+        peer.send(frame);
+        selector.wakeup();
+    }
+
+    /**
+     * Queues the frame for every peer except the one given, which may be null
+     */
+    void broadcast(ByteBuffer frame, FrameChannel except) {
+        for (FrameChannel peer : peers) {
+            if (peer != except) {
+                peer.send(frame.duplicate());
+            }
+        }
+
+        selector.wakeup();
+    }
+
+    void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingChannels();
+                processSelectedKeys();
+                updateWriteInterest();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            peers.forEach(FrameTransport::flushAndClose);
+
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void registerPendingChannels() throws IOException {
+        FrameChannel peer;
+
+        while ((peer = pendingRegistrations.poll()) != null) {
+            register(peer);
+        }
+    }
+
+    private void register(FrameChannel peer) throws IOException {
+        peer.setKey(peer.getChannel().register(selector, SelectionKey.OP_READ, peer));
+        peers.add(peer);
+    }
+
+    private void processSelectedKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+
+            FrameChannel peer = (FrameChannel) key.attachment();
+
+            try {
+                if (key.isReadable() && !peer.read(frame -> frameHandler.accept(peer, frame))) {
+                    disconnect(peer);
+                    continue;
+                }
+
+                if (key.isValid() && key.isWritable() && peer.flush()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                disconnect(peer);
+            } catch (RuntimeException e) {
+                System.out.println("Disconnecting a peer that sent a bad frame: " + e.getMessage());
+                disconnect(peer);
+            }
+        }
+    }
+
+    /* A connection that cannot be set up is dropped, without stopping the selector */
+    private void accept() {
+        SocketChannel channel = null;
+
+        try {
+            channel = serverChannel.accept();
+
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                register(new FrameChannel(channel));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not accept a connection: " + e.getMessage());
+
+            if (channel != null) {
+                new FrameChannel(channel).close();
+            }
+        }
+    }
+
+    private void updateWriteInterest() {
+        for (FrameChannel peer : peers) {
+            SelectionKey key = peer.getKey();
+
+            if (key.isValid() && peer.hasPendingWrites()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /* What is left to write goes out if the socket takes it straight away */
+    private static void flushAndClose(FrameChannel peer) {
+        try {
+            peer.flush();
+        } catch (IOException e) {
+            // the peer is going away anyway
+        }
+
+        peer.close();
+    }
+
+    private void disconnect(FrameChannel peer) {
+        peers.remove(peer);
+        peer.getKey().cancel();
+        peer.close();
+        disconnectHandler.accept(peer);
+    }
+}
@@ -0,0 +1,57 @@
+package blockchain;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * What nodes tell each other: either a new transaction, or a new block together with its transactions.
+ */
+class GossipMessage implements Serializable {
+    enum Type { TRANSACTION, BLOCK }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Type type;
+    private final Transaction transaction;
+    private final Blockchain.Block block;
+    private final List<Transaction> transactions;
+    private final long minedNanos;
+
+    private GossipMessage(Type type, Transaction transaction, Blockchain.Block block, List<Transaction> transactions,
+                          long minedNanos) {
+        this.type = type;
+        this.transaction = transaction;
+        this.block = block;
+        this.transactions = transactions;
+        this.minedNanos = minedNanos;
+    }
+
+    static GossipMessage ofTransaction(Transaction transaction) {
+        return new GossipMessage(Type.TRANSACTION, transaction, null, null, 0);
+    }
+
+    static GossipMessage ofBlock(Blockchain.Block block, List<Transaction> transactions, long minedNanos) {
+        return new GossipMessage(Type.BLOCK, null, block, transactions, minedNanos);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    Transaction getTransaction() {
+        return transaction;
+    }
+
+    Blockchain.Block getBlock() {
+        return block;
+    }
+
+    List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /* When the block was found, by System.nanoTime(), which is only comparable because all nodes share a JVM */
+    long getMinedNanos() {
+        return minedNanos;
+    }
+}
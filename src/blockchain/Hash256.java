@@ -0,0 +1,116 @@
+package blockchain;
+
+import java.io.Serializable;
+
+/**
+ * An immutable SHA-256 hash, held as four longs rather than 64 hex characters.  Comparing and hashing one
+ * takes a handful of instructions, and the hex form is only built when it is printed.
+ */
+public final class Hash256 implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /* The previous hash of the first block */
+    public static final Hash256 ZERO = new Hash256(0, 0, 0, 0);
+
+    private final long word0;
+    private final long word1;
+    private final long word2;
+    private final long word3;
+    private transient String hex;
+
+    private Hash256(long word0, long word1, long word2, long word3) {
+        this.word0 = word0;
+        this.word1 = word1;
+        this.word2 = word2;
+        this.word3 = word3;
+    }
+
+    /* From the 32 bytes of a digest */
+    public static Hash256 of(byte[] digest) {
+        if (digest.length != 32) {
+            throw new IllegalArgumentException("A SHA-256 digest has 32 bytes, not " + digest.length);
+        }
+
+        return new Hash256(longAt(digest, 0), longAt(digest, 8), longAt(digest, 16), longAt(digest, 24));
+    }
+
+    /* From the eight big-endian words of a digest, as the SHA-256 state holds them */
+    public static Hash256 of(int[] words) {
+        return new Hash256(join(words[0], words[1]), join(words[2], words[3]),
+                join(words[4], words[5]), join(words[6], words[7]));
+    }
+
+    public int leadingZeroBits() {
+        if (word0 != 0) {
+            return Long.numberOfLeadingZeros(word0);
+        } else if (word1 != 0) {
+            return 64 + Long.numberOfLeadingZeros(word1);
+        } else if (word2 != 0) {
+            return 128 + Long.numberOfLeadingZeros(word2);
+        }
+
+        return 192 + Long.numberOfLeadingZeros(word3);
+    }
+
+    /* True if the hex form starts with the given number of zeros */
+    public boolean hasLeadingZeros(int numberOfZeros) {
+        return leadingZeroBits() >= 4 * numberOfZeros;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof Hash256)) {
+            return false;
+        }
+
+        Hash256 other = (Hash256) o;
+
+        return word0 == other.word0 && word1 == other.word1 && word2 == other.word2 && word3 == other.word3;
+    }
+
+    @Override
+    public int hashCode() {
+        // the words of a hash are already uniformly distributed
+        return (int) word0;
+    }
+
+    @Override
+    public String toString() {
+        if (hex == null) {
+            char[] chars = new char[64];
+            appendHex(word0, chars, 0);
+            appendHex(word1, chars, 16);
+            appendHex(word2, chars, 32);
+            appendHex(word3, chars, 48);
+            hex = new String(chars);
+        }
+
+        return hex;
+    }
+
+    private static void appendHex(long word, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX_DIGITS[(int) word & 0xf];
+            word >>>= 4;
+        }
+    }
+
+    private static long longAt(byte[] bytes, int offset) {
+        long value = 0;
+
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xff);
+        }
+
+        return value;
+    }
+
+    private static long join(int high, int low) {
+        return (long) high << 32 | (low & 0xffffffffL);
+    }
+}
@@ -0,0 +1,182 @@
+package blockchain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends batches of signed transactions to a {@link TransactionIngressServer} as fast as it acknowledges them,
+ * with a bounded number of batches in flight, and reports the sustained rate and the acknowledgement latency.
+ * The IDs of the transactions start a little above the next transaction ID of the server, which an empty
+ * batch asks for before they are signed.  Every acknowledgement reports the next ID of the server again; if the
+ * miner took IDs for its own transactions past all of the next unsent batch, the unsent batches are signed again a
+ * little above it, so that they are not all rejected.  The time that takes does not count towards the rate.
+ * <p>
+ * Arguments: port, number of batches, transactions per batch, batches in flight
+ */
+public class IngressLoadClient {
+    private static final int DEFAULT_PORT = 8555;
+    private static final int DEFAULT_BATCHES = 200;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_BATCHES_IN_FLIGHT = 8;
+    private static final int TRANSACTION_AMOUNT_BOUND = 10;
+    /* Room for the IDs the miner takes for its own transactions while the batches are signed and sent */
+    private static final long ID_HEADROOM = 1000;
+    private static final int FIRST_ID_BATCH_ID = -1;
+
+    private final Random random = new Random();
+    private final LatencyRecorder ackLatencies = new LatencyRecorder();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong serverNextTransactionId = new AtomicLong();
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCHES;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+        int batchesInFlight = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BATCHES_IN_FLIGHT;
+
+        try {
+            new IngressLoadClient().run(port, batches, batchSize, batchesInFlight);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(int port, int batches, int batchSize, int batchesInFlight)
+            throws IOException, InterruptedException {
+        long[] sentNanos = new long[batches];
+        Semaphore inFlight = new Semaphore(batchesInFlight);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            long firstId = askForNextTransactionId(out, in) + ID_HEADROOM;
+            System.out.printf("Signing %d transactions...%n", batches * batchSize);
+            List<byte[]> frames = createFrames(0, batches, batchSize, firstId);
+            // the miner kept taking IDs while they were signed
+            serverNextTransactionId.set(askForNextTransactionId(out, in));
+            Thread ackReader = new Thread(() -> readAcks(in, batches, sentNanos, inFlight), "ack-reader");
+            ackReader.start();
+            long startTime = System.nanoTime();
+            long resigningNanos = 0;
+
+            for (int i = 0; i < batches; i++) {
+                inFlight.acquire();
+                long serverNextId = serverNextTransactionId.get();
+
+                // a few IDs the miner took in between only cost as many rejections
+                if (serverNextId >= firstId + (long) (i + 1) * batchSize) {
+                    long resigningStart = System.nanoTime();
+                    firstId = serverNextId + ID_HEADROOM - (long) i * batchSize;
+                    frames.subList(i, batches).clear();
+                    frames.addAll(createFrames(i, batches, batchSize, serverNextId + ID_HEADROOM));
+                    resigningNanos += System.nanoTime() - resigningStart;
+                    System.out.printf("The server passed the IDs of batch %d, the %d batches left are signed again%n",
+                            i, batches - i);
+                }
+
+                sentNanos[i] = System.nanoTime();
+                writeFrame(out, frames.get(i));
+            }
+
+            ackReader.join();
+            double seconds = (System.nanoTime() - startTime - resigningNanos) / 1e9;
+            report(batches, seconds);
+        }
+    }
+
+    private long askForNextTransactionId(DataOutputStream out, DataInputStream in) throws IOException {
+        writeFrame(out, IngressProtocol.encodeBatch(FIRST_ID_BATCH_ID, List.of()));
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+
+        return IngressProtocol.decodeAck(frame).getNextTransactionId();
+    }
+
+    private void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    /* The frames of the batches from firstBatch up to batches, with IDs counting up from firstId */
+    private List<byte[]> createFrames(int firstBatch, int batches, int batchSize, long firstId) {
+        List<Entity> entities = Blockchain.loadEntities();
+        long nextId = firstId;
+        List<byte[]> frames = new ArrayList<>();
+
+        try {
+            Signature rsa = Signature.getInstance(SecurityKeyPair.SIGNATURE_ALGORITHM);
+            rsa.initSign(SecurityKeyPair.readPrivateKey());
+
+            for (int i = firstBatch; i < batches; i++) {
+                List<Transaction> transactions = new ArrayList<>();
+
+                for (int j = 0; j < batchSize; j++) {
+                    int sender = random.nextInt(entities.size());
+                    // the server refuses transactions to oneself
+                    int receiver = (sender + 1 + random.nextInt(entities.size() - 1)) % entities.size();
+                    Transaction unsigned = new Transaction(nextId++, entities.get(sender), entities.get(receiver),
+                            random.nextInt(TRANSACTION_AMOUNT_BOUND) + 1, null);
+                    rsa.update(unsigned.getSignedData().getBytes());
+                    transactions.add(new Transaction(unsigned.getId(), unsigned.getSender(), unsigned.getReceiver(),
+                            unsigned.getAmount(), rsa.sign()));
+                }
+
+                frames.add(IngressProtocol.encodeBatch(i, transactions));
+            }
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            throw new RuntimeException(e);
+        }
+
+        return frames;
+    }
+
+    private void readAcks(DataInputStream in, int batches, long[] sentNanos, Semaphore inFlight) {
+        try {
+            for (int i = 0; i < batches; i++) {
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                IngressProtocol.Ack ack = IngressProtocol.decodeAck(frame);
+                ackLatencies.record(System.nanoTime() - sentNanos[ack.getBatchId()]);
+                accepted.addAndGet(ack.getAccepted());
+                rejected.addAndGet(ack.getRejected());
+                serverNextTransactionId.accumulateAndGet(ack.getNextTransactionId(), Math::max);
+                inFlight.release();
+            }
+        } catch (IOException e) {
+            System.out.println("Lost the connection to the server: " + e.getMessage());
+            // let the sender run to the end
+            inFlight.release(batches);
+        }
+    }
+
+    private void report(int batches, double seconds) {
+        long acknowledged = accepted.get() + rejected.get();
+        System.out.printf("%d batches acknowledged in %.2f s: %d accepted, %d rejected%n",
+                ackLatencies.getCount(), seconds, accepted.get(), rejected.get());
+        System.out.printf("%.0f transactions/s, ack latency p50 %.2f ms, p99 %.2f ms%n",
+                acknowledged / seconds, ackLatencies.getPercentileMillis(50), ackLatencies.getPercentileMillis(99));
+
+        if (ackLatencies.getCount() < batches) {
+            System.out.printf("%d batches were never acknowledged%n", batches - ackLatencies.getCount());
+        }
+    }
+}
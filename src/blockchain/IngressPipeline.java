@@ -0,0 +1,311 @@
+package blockchain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Admits the batches received by the {@link TransactionIngressServer} in stages, connected by bounded queues:
+ * <pre>
+ *     decode  -&gt;  verify signatures (in parallel)  -&gt;  admit (one at a time)
+ * </pre>
+ * Decoding hands each batch to the verifiers and, in the order the batches arrived, to the admitter, which
+ * waits for the signatures of a batch to be verified and then checks ID and balance of each transaction against
+ * the pending state, see {@link Blockchain#admitTransaction}.  A full queue holds up the stage before it, and in
+ * the end the reading of the sockets.  Every batch is acknowledged, also one that cannot be decoded and one that
+ * is still in the pipeline when it stops; a transaction that fails a stage in any way is rejected.
+ */
+class IngressPipeline {
+    private static final int DECODE_QUEUE_CAPACITY = 256;
+    private static final int VERIFY_QUEUE_CAPACITY = 256;
+    private static final int ADMIT_QUEUE_CAPACITY = 1024;
+    private static final long MILLISECONDS_TO_DRAIN = 10_000;
+
+    private static final class Received {
+        private final FrameChannel client;
+        private final byte[] frame;
+
+        Received(FrameChannel client, byte[] frame) {
+            this.client = client;
+            this.frame = frame;
+        }
+    }
+
+    private static final class DecodedBatch {
+        private final FrameChannel client;
+        private final IngressProtocol.Batch batch;
+        private final boolean[] verified;
+        private final CountDownLatch verifiedLatch = new CountDownLatch(1);
+
+        DecodedBatch(FrameChannel client, IngressProtocol.Batch batch) {
+            this.client = client;
+            this.batch = batch;
+            this.verified = new boolean[batch.getTransactions().size()];
+        }
+    }
+
+    /* The counters of one stage, in transactions, and how many of its threads may work */
+    private static final class Stage<T> {
+        private final String name;
+        private final int threads;
+        private final BlockingQueue<T> queue;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicInteger peakDepth = new AtomicInteger();
+        private int activeThreads;
+
+        Stage(String name, int threads, int capacity) {
+            this.name = name;
+            this.threads = threads;
+            this.activeThreads = threads;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        synchronized void setActiveThreads(int activeThreads) {
+            this.activeThreads = Math.max(1, Math.min(threads, activeThreads));
+            notifyAll();
+        }
+
+        synchronized int getActiveThreads() {
+            return activeThreads;
+        }
+
+        /* Threads beyond the active ones wait here, without taking work */
+        synchronized void awaitTurn(int thread) throws InterruptedException {
+            while (thread >= activeThreads) {
+                wait();
+            }
+        }
+
+        void put(T item) throws InterruptedException {
+            queue.put(item);
+            peakDepth.accumulateAndGet(queue.size(), Math::max);
+        }
+
+        String getStats(double seconds) {
+            return String.format("%-7s %2d of %2d threads: %,10.0f transactions/s, queue %d of %d (peak %d)",
+                    name, getActiveThreads(), threads, processed.get() / seconds, queue.size(),
+                    queue.size() + queue.remainingCapacity(), peakDepth.get());
+        }
+    }
+
+    private final Blockchain blockchain;
+    private final Map<String, Entity> entitiesByName;
+    private final BiConsumer<FrameChannel, IngressProtocol.Ack> ackSender;
+    private final SignatureVerifier signatureVerifier;
+    private final Stage<Received> decodeStage;
+    private final Stage<DecodedBatch> verifyStage;
+    private final Stage<DecodedBatch> admitStage;
+    private final List<Thread> threads = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    /* Batches submitted and not yet acknowledged, guarded by this */
+    private int batchesInFlight;
+    private boolean stopping;
+
+    /**
+     * @param verifyThreads the most threads that verify signatures, see {@link #setVerifyThreads}
+     */
+    IngressPipeline(Blockchain blockchain, Map<String, Entity> entitiesByName, int verifyThreads,
+                    BiConsumer<FrameChannel, IngressProtocol.Ack> ackSender) {
+        this.blockchain = blockchain;
+        this.entitiesByName = entitiesByName;
+        this.ackSender = ackSender;
+        this.signatureVerifier = blockchain.getSignatureVerifier();
+        this.decodeStage = new Stage<>("decode", 1, DECODE_QUEUE_CAPACITY);
+        this.verifyStage = new Stage<>("verify", verifyThreads, VERIFY_QUEUE_CAPACITY);
+        this.admitStage = new Stage<>("admit", 1, ADMIT_QUEUE_CAPACITY);
+    }
+
+    void start() {
+        startThreads(decodeStage, this::decode);
+        startThreads(verifyStage, this::verify);
+        startThreads(admitStage, this::admit);
+    }
+
+    /* Lets the batches in the pipeline through, answering any that arrive meanwhile with a rejection */
+    void stop() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MILLISECONDS_TO_DRAIN;
+
+        synchronized (this) {
+            stopping = true;
+
+            while (batchesInFlight > 0 && System.currentTimeMillis() < deadline) {
+                wait(deadline - System.currentTimeMillis());
+            }
+
+            if (batchesInFlight > 0) {
+                System.out.printf("%d transaction batches were left unacknowledged%n", batchesInFlight);
+            }
+        }
+
+        threads.forEach(Thread::interrupt);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Called on the selector thread, which waits while the decode queue is full.  The frame must have a valid
+     * batch header, see {@link IngressProtocol#hasValidBatchHeader}.
+     */
+    void submit(FrameChannel client, byte[] frame) {
+        synchronized (this) {
+            if (!stopping) {
+                batchesInFlight++;
+            } else {
+                reject(client, frame);
+                return;
+            }
+        }
+
+        try {
+            decodeStage.put(new Received(client, frame));
+        } catch (InterruptedException e) {
+            reject(client, frame);
+            acknowledged();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Lets only the given number of verifiers work, the rest wait until they are needed */
+    void setVerifyThreads(int verifyThreads) {
+        verifyStage.setActiveThreads(verifyThreads);
+    }
+
+    int getVerifyThreads() {
+        return verifyStage.getActiveThreads();
+    }
+
+    /* Batches waiting for their signatures to be verified */
+    int getVerifyBacklog() {
+        return verifyStage.queue.size();
+    }
+
+    String getStats() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        return List.of(decodeStage, verifyStage, admitStage).stream()
+                .map(stage -> stage.getStats(seconds))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private interface StageStep<T> {
+        void process(T item) throws InterruptedException;
+    }
+
+    /* The steps deal with bad input themselves, anything else they throw is reported and does not end the thread */
+    private <T> void startThreads(Stage<T> stage, StageStep<T> step) {
+        for (int i = 0; i < stage.threads; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        stage.awaitTurn(index);
+                        T item = stage.queue.take();
+
+                        try {
+                            step.process(item);
+                        } catch (RuntimeException e) {
+                            System.out.printf("Ingress %s failed: %s%n", stage.name, e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }, "ingress-" + stage.name + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    private void decode(Received received) throws InterruptedException {
+        IngressProtocol.Batch batch;
+
+        try {
+            batch = IngressProtocol.decodeBatch(received.frame, entitiesByName);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Malformed transaction batch: " + e);
+            reject(received.client, received.frame);
+            acknowledged();
+            return;
+        }
+
+        DecodedBatch decoded = new DecodedBatch(received.client, batch);
+        decodeStage.processed.addAndGet(batch.getTransactions().size() + batch.getUndecodable());
+        // the admit queue keeps the batches in order, whichever verifier finishes first
+        admitStage.put(decoded);
+        verifyStage.put(decoded);
+    }
+
+    /* Whatever happens, the admitter must not be left waiting for the batch */
+    private void verify(DecodedBatch decoded) {
+        List<Transaction> transactions = decoded.batch.getTransactions();
+
+        try {
+            for (int i = 0; i < transactions.size(); i++) {
+                decoded.verified[i] = verifyQuietly(transactions.get(i));
+            }
+
+            verifyStage.processed.addAndGet(transactions.size());
+        } finally {
+            decoded.verifiedLatch.countDown();
+        }
+    }
+
+    private boolean verifyQuietly(Transaction transaction) {
+        try {
+            return signatureVerifier.verify(transaction);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void admit(DecodedBatch decoded) throws InterruptedException {
+        decoded.verifiedLatch.await();
+        List<Transaction> transactions = decoded.batch.getTransactions();
+        int accepted = 0;
+
+        try {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (decoded.verified[i] && admitQuietly(transactions.get(i))) {
+                    accepted++;
+                }
+            }
+
+            admitStage.processed.addAndGet(transactions.size());
+            int rejected = transactions.size() - accepted + decoded.batch.getUndecodable();
+            ackSender.accept(decoded.client, new IngressProtocol.Ack(decoded.batch.getId(), accepted, rejected,
+                    blockchain.peekNextTransactionId()));
+        } finally {
+            acknowledged();
+        }
+    }
+
+    private boolean admitQuietly(Transaction transaction) {
+        try {
+            return blockchain.admitTransaction(transaction);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /* Answers a batch that will not go through the pipeline with all of its transactions rejected */
+    private void reject(FrameChannel client, byte[] frame) {
+        ackSender.accept(client, new IngressProtocol.Ack(IngressProtocol.getBatchId(frame), 0,
+                IngressProtocol.getTransactionCount(frame), blockchain.peekNextTransactionId()));
+    }
+
+    private synchronized void acknowledged() {
+        batchesInFlight--;
+        notifyAll();
+    }
+}
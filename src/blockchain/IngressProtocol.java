@@ -0,0 +1,190 @@
+package blockchain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary frames of the {@link TransactionIngressServer}.  A client sends batches:
+ * <pre>
+ *     int batchId, int count, then per transaction:
+ *     long id, UTF sender, UTF receiver, int amount, short signatureLength, byte[] signature
+ * </pre>
+ * and the server answers every batch with an acknowledgement:
+ * <pre>
+ *     int batchId, int accepted, int rejected, long nextTransactionId
+ * </pre>
+ * A batch that cannot be decoded is acknowledged with all of its transactions rejected.  The server only takes IDs from its next transaction ID up to a bounded distance above it, see
+ * {@link Blockchain#addToPendingTransactionsIfNewer}, so a client learns where to start from the
+ * acknowledgement of a batch, which may be empty.  Every frame is preceded by its length, see
+ * {@link FrameChannel}.
+ */
+class IngressProtocol {
+    private static final int BATCH_HEADER_SIZE = 2 * Integer.BYTES;
+    /* ID, two empty names, amount and an empty signature */
+    private static final int MIN_TRANSACTION_SIZE = Long.BYTES + 2 * Short.BYTES + Integer.BYTES + Short.BYTES;
+
+    static final class Batch {
+        private final int id;
+        private final List<Transaction> transactions;
+        private final int undecodable;
+
+        Batch(int id, List<Transaction> transactions, int undecodable) {
+            this.id = id;
+            this.transactions = transactions;
+            this.undecodable = undecodable;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /* Transactions that named an unknown entity */
+        int getUndecodable() {
+            return undecodable;
+        }
+    }
+
+    static final class Ack {
+        private final int batchId;
+        private final int accepted;
+        private final int rejected;
+        private final long nextTransactionId;
+
+        Ack(int batchId, int accepted, int rejected, long nextTransactionId) {
+            this.batchId = batchId;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.nextTransactionId = nextTransactionId;
+        }
+
+        int getBatchId() {
+            return batchId;
+        }
+
+        int getAccepted() {
+            return accepted;
+        }
+
+        int getRejected() {
+            return rejected;
+        }
+
+        /* The lowest ID the server takes after this batch */
+        long getNextTransactionId() {
+            return nextTransactionId;
+        }
+    }
+
+    private IngressProtocol() {
+    }
+
+    static byte[] encodeBatch(int batchId, List<Transaction> transactions) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(batchId);
+            out.writeInt(transactions.size());
+
+            for (Transaction transaction : transactions) {
+                out.writeLong(transaction.getId());
+                out.writeUTF(transaction.getSender().getName());
+                out.writeUTF(transaction.getReceiver().getName());
+                out.writeInt(transaction.getAmount());
+                out.writeShort(transaction.getSignature().length);
+                out.write(transaction.getSignature());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Whether the frame starts like a batch: a batch ID and a count of transactions that can fit in the frame
+     */
+    static boolean hasValidBatchHeader(byte[] frame) {
+        if (frame.length < BATCH_HEADER_SIZE) {
+            return false;
+        }
+
+        int count = getTransactionCount(frame);
+
+        return count >= 0 && count <= (frame.length - BATCH_HEADER_SIZE) / MIN_TRANSACTION_SIZE;
+    }
+
+    /* The batch ID and transaction count of a frame with a valid batch header */
+    static int getBatchId(byte[] frame) {
+        return ByteBuffer.wrap(frame).getInt(0);
+    }
+
+    static int getTransactionCount(byte[] frame) {
+        return ByteBuffer.wrap(frame).getInt(Integer.BYTES);
+    }
+
+    /**
+     * Decodes a batch, looking up the sender and receiver of each transaction by name
+     *
+     * @throws IOException if the frame is not a well-formed batch
+     */
+    static Batch decodeBatch(byte[] frame, Map<String, Entity> entitiesByName) throws IOException {
+        if (!hasValidBatchHeader(frame)) {
+            throw new IOException("Invalid batch header");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        int batchId = in.readInt();
+        int count = in.readInt();
+        List<Transaction> transactions = new ArrayList<>(count);
+        int undecodable = 0;
+
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            Entity sender = entitiesByName.get(in.readUTF());
+            Entity receiver = entitiesByName.get(in.readUTF());
+            int amount = in.readInt();
+            byte[] signature = new byte[in.readUnsignedShort()];
+            in.readFully(signature);
+
+            if (sender == null || receiver == null) {
+                undecodable++;
+            } else {
+                transactions.add(new Transaction(id, sender, receiver, amount, signature));
+            }
+        }
+
+        return new Batch(batchId, transactions, undecodable);
+    }
+
+    static byte[] encodeAck(Ack ack) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ack.getBatchId());
+            out.writeInt(ack.getAccepted());
+            out.writeInt(ack.getRejected());
+            out.writeLong(ack.getNextTransactionId());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static Ack decodeAck(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+
+        return new Ack(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+    }
+}
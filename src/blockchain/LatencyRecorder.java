@@ -0,0 +1,32 @@
+package blockchain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects latencies, in nanoseconds, and reports percentiles of them in milliseconds.
+ */
+class LatencyRecorder {
+    private final List<Long> latencies = new ArrayList<>();
+
+    synchronized void record(long latencyNanos) {
+        latencies.add(latencyNanos);
+    }
+
+    synchronized int getCount() {
+        return latencies.size();
+    }
+
+    synchronized double getPercentileMillis(double percentile) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
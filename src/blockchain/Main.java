@@ -1,7 +1,28 @@
 package blockchain;
 
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
-        new Miner().run();
+        String mode = args.length > 0 ? args[0] : "";
+        String[] modeArgs = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        switch (mode) {
+            case "network":
+                NetworkSimulation.main(modeArgs);
+                break;
+            case "ingress-load":
+                IngressLoadClient.main(modeArgs);
+                break;
+            case "daemon":
+                new Miner(MinerConfig.load(modeArgs.length > 0 ? modeArgs[0] : MinerConfig.DEFAULT_FILE_NAME, true))
+                        .run();
+                break;
+            case "worker":
+                MiningWorker.main(modeArgs);
+                break;
+            default:
+                new Miner().run();
+        }
     }
 }
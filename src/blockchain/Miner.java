@@ -1,126 +1,379 @@
 package blockchain;
 
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.*;
 
+/**
+ * Mines the number of blocks given in the {@link MinerConfig}, or, as a daemon, until it is stopped.  Stopping
+ * it, with SIGTERM or Ctrl-C, lets it finish the block being mined, validate and save the chain before it exits.
+ */
 public class Miner {
-    private static final int NUMBER_OF_TASKS = Runtime.getRuntime().availableProcessors();
-    private static final int NUMBER_OF_NEW_BLOCKS = 15;
     private static final int AWAIT_TERMINATION_TIMEOUT = 800;
-    private static final int FUTURE_GET_TIMEOUT = 100;
-    private static final long MILLISECONDS_TO_WAIT_FOR_PENDING_MESSAGES = 300;
-    private static final int DECREMENT_AFTER_SECONDS = 1;
-    private static final int INCREMENT_AFTER_SECONDS = 0;
-    private static final String FILE_NAME = "blockchain.bin";
+    private static final int BLOCKS_TO_PRINT = 15;
 
+    private final MinerConfig config;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean stopRequested;
     private Blockchain blockchain;
+    private MiningCoordinator coordinator;
+    private CpuScheduler scheduler;
+    private BlockTemplateBuilder templateBuilder;
+    private ThroughputReporter reporter;
+    private int lastBlockTransactions;
+
+    public Miner() {
+        this(MinerConfig.load(System.getProperty("blockchain.config", MinerConfig.DEFAULT_FILE_NAME), false));
+    }
+
+    Miner(MinerConfig config) {
+        this.config = config;
+    }
 
     public void run() {
-        setupSecurityKeyPair();
+        installShutdownHook(Thread.currentThread());
+
+        try {
+            mine();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void mine() {
+        SecurityKeyPair.createIfMissing();
         blockchain = loadFromFile();
-        ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_TASKS);
+        coordinator = startMiningCoordinator();
+        TransactionIngressServer ingressServer = startIngressServer();
+        templateBuilder = new BlockTemplateBuilder(blockchain);
+        scheduler = new CpuScheduler(blockchain, ingressServer, templateBuilder);
+        scheduler.start();
+        // the mining tasks, the transaction task and the remote mining task
+        ExecutorService executorService =
+                Executors.newFixedThreadPool(scheduler.getMaxMiningThreads() + (coordinator == null ? 1 : 2));
         executorService.execute(new TransactionTask(blockchain));
+        Thread templateThread = new Thread(templateBuilder, "block-template-builder");
+        templateThread.start();
+        reporter = startReporter();
         startMinersAndProcess(executorService);
+        stopReporter();
+        // nothing admits transactions any more once the ingress server and the transaction task have stopped,
+        // then those of the template go back to the pending ones, which are saved with the chain
+        stopIngressServer(ingressServer);
         shutdownExecutor(executorService);
+        stopTemplateBuilder(templateThread);
+        stopMiningCoordinator();
+        stopScheduler();
+
+        if (blockchain.dropUnsealedBlock()) {
+            System.out.println("Mining stopped before the last block was found, its transactions are pending again");
+        }
 
         if (blockchain.validate()) {
             saveToFile();
-            blockchain.printLastNBlocks(NUMBER_OF_NEW_BLOCKS);
+
+            if (!config.isDaemon()) {
+                blockchain.printLastNBlocks(BLOCKS_TO_PRINT);
+            }
+
+            System.out.println(blockchain.getBodyCacheStats());
+            System.out.println(blockchain.getSignatureCacheStats());
+            System.out.println(blockchain.getTransactionIdFilterStats());
         } else {
             System.out.println("Blockchain did not validate");
         }
     }
 
-    private void setupSecurityKeyPair() {
-        boolean privateKeyExists = Files.exists(Paths.get(SecurityKeyPair.PATH_TO_PRIVATE_KEY));
-        boolean publicKeyExists = Files.exists(Paths.get(SecurityKeyPair.PATH_TO_PUBLIC_KEY));
+    /**
+     * On SIGTERM or Ctrl-C, lets mining stop after the block being mined, or after the grace period if that takes
+     * too long, and waits for the chain to be validated and saved
+     */
+    private void installShutdownHook(Thread miningThread) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (finished.getCount() == 0) {
+                return;
+            }
+
+            System.out.println("Stopping after the block being mined...");
+            stopRequested = true;
+
+            try {
+                if (!finished.await(config.getShutdownGraceSeconds(), TimeUnit.SECONDS)) {
+                    System.out.println("Stopping mining now");
+                    miningThread.interrupt();
+                    finished.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "miner-shutdown"));
+    }
+
+    private ThroughputReporter startReporter() {
+        if (config.getReportIntervalSeconds() <= 0) {
+            return null;
+        }
+
+        ThroughputReporter throughputReporter = new ThroughputReporter(config.getReportIntervalSeconds(),
+                blockchain);
+        throughputReporter.start();
+
+        return throughputReporter;
+    }
+
+    private void stopReporter() {
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+
+    /* Only if a port was given, in the settings or with -Dblockchain.ingressPort */
+    private TransactionIngressServer startIngressServer() {
+        int port = config.getIngressPort();
+
+        if (port <= 0) {
+            return null;
+        }
+
+        try {
+            TransactionIngressServer ingressServer = new TransactionIngressServer(blockchain, port);
+            ingressServer.start();
+            System.out.println("Accepting transactions on port " + port);
+
+            return ingressServer;
+        } catch (IOException e) {
+            System.out.println("Could not start the transaction ingress server: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void stopIngressServer(TransactionIngressServer ingressServer) {
+        if (ingressServer == null) {
+            return;
+        }
+
+        try {
+            ingressServer.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.println(ingressServer.getStats());
+    }
+
+    /* Only if a port was given, in the settings or with -Dblockchain.poolPort */
+    private MiningCoordinator startMiningCoordinator() {
+        int port = config.getPoolPort();
+
+        if (port <= 0) {
+            return null;
+        }
+
+        try {
+            MiningCoordinator miningCoordinator = new MiningCoordinator(port);
+            miningCoordinator.start();
+            System.out.println("Handing out mining work on port " + port);
+
+            return miningCoordinator;
+        } catch (IOException e) {
+            System.out.println("Could not start the mining coordinator: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void stopMiningCoordinator() {
+        if (coordinator == null) {
+            return;
+        }
+
+        System.out.println(coordinator.getStats());
+
+        try {
+            coordinator.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopTemplateBuilder(Thread templateThread) {
+        templateBuilder.stop();
+
+        try {
+            templateThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (templateBuilder.getRejected() > 0) {
+            System.out.printf("%d transactions with a bad signature were left out of the blocks%n",
+                    templateBuilder.getRejected());
+        }
+    }
 
-        if (!privateKeyExists || !publicKeyExists) {
-            SecurityKeyPair keyPair = new SecurityKeyPair();
-            keyPair.writeKeyPairToFiles();
+    private void stopScheduler() {
+        try {
+            scheduler.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     private Blockchain loadFromFile() {
-         if (Files.exists(Paths.get(FILE_NAME))) {
-             Blockchain blockchain = (Blockchain) SerializationUtils.deserialize(FILE_NAME);
-             blockchain.updateTransactionId();
+         if (Files.exists(config.getChainFile())) {
+             Blockchain blockchain = (Blockchain) SerializationUtils.deserialize(config.getChainFile().toString());
+             blockchain.initializeStorage();
+             blockchain.restoreCommittedState();
              blockchain.initializePendingTransactions();
 
+             if (blockchain.getNumberOfPendingTransactions() > 0) {
+                 System.out.printf("%d transactions are pending from the last run%n",
+                         blockchain.getNumberOfPendingTransactions());
+             }
+
              return blockchain;
          } else {
-             return new Blockchain();
+             return new Blockchain(config.getDataDirectory());
          }
     }
 
+    /* Through a temporary file, so a crash while saving leaves the previous save in place */
     private void saveToFile() {
-        SerializationUtils.serialize(blockchain, FILE_NAME);
+        Path chainFile = config.getChainFile();
+        Path temporaryFile = Paths.get(chainFile + ".tmp");
+
+        List<Long> prunedBodies;
+        long savedHeight;
+
+        // nothing may change the chain or the balances while it is written
+        synchronized (blockchain) {
+            SerializationUtils.serialize(blockchain, temporaryFile.toString());
+            prunedBodies = blockchain.takePrunedBodies();
+            savedHeight = blockchain.getLastId();
+        }
+
+        try {
+            Files.move(temporaryFile, chainFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // only now that the saved chain has them marked as pruned, and no longer needs the older snapshots
+        blockchain.deleteBodies(prunedBodies);
+        blockchain.deleteOldSnapshots(savedHeight);
     }
 
-    private void startMinersAndProcess(ExecutorService executorService) {
-        List<Callable<Optional<MiningTaskRecord>>> callableTasks = new ArrayList<>();
+    private void saveCheckpointIfDue() {
+        long interval = config.getCheckpointInterval();
 
-        for (int i = 0; i < NUMBER_OF_TASKS - 1; i++) {
-            callableTasks.add(new MiningTask(blockchain));
+        if (interval > 0 && blockchain.getLastId() % interval == 0) {
+            saveToFile();
         }
+    }
+
+    private void startMinersAndProcess(ExecutorService executorService) {
+        for (long i = 0; config.getBlocks() == 0 || i < config.getBlocks(); i++) {
+            if (stopRequested) {
+                break;
+            }
+
+            long startNanos = System.nanoTime();
 
-        for (int i = 0; i < NUMBER_OF_NEW_BLOCKS; i++) {
             if (blockchain.getSize() == 0) {
                 createFirstBlock();
-            } else {
-                createNextBlock();
+            } else if (!createNextBlock()) {
+                break;
+            }
+
+            // as many mining tasks as the scheduler gives threads to mining right now, new ones each time, as
+            // the cancelled tasks of the last block may still be winding down
+            List<Callable<Optional<MiningTaskRecord>>> callableTasks = new ArrayList<>();
+            List<MiningTask.Header> headers = MiningTask.createHeaders(blockchain);
+
+            for (int task = 0; task < scheduler.getMiningThreads(); task++) {
+                callableTasks.add(new MiningTask(blockchain, MiningTask.pickRandomHeader(headers)));
+            }
+
+            if (coordinator != null) {
+                callableTasks.add(new RemoteMiningTask(blockchain, coordinator,
+                        MiningTask.pickRandomHeader(headers)));
             }
 
             if (!startMinersAndUpdateBlock(executorService, callableTasks)) {
                 break;
             }
+
+            if (reporter != null) {
+                reporter.recordBlock(lastBlockTransactions, System.nanoTime() - startNanos);
+            }
+
+            saveCheckpointIfDue();
         }
     }
 
+    /**
+     * Races the tasks, local and remote, against each other: the first one to come back with a valid block seals
+     * it, and the others are cancelled
+     *
+     * @return false if interrupted, or if no task found the block
+     */
     private boolean startMinersAndUpdateBlock(ExecutorService executorService,
                                               List<Callable<Optional<MiningTaskRecord>>> callableTasks) {
-        List<Future<Optional<MiningTaskRecord>>> futures;
+        CompletionService<Optional<MiningTaskRecord>> completionService =
+                new ExecutorCompletionService<>(executorService);
+        List<Future<Optional<MiningTaskRecord>>> futures = new ArrayList<>();
+        callableTasks.forEach(task -> futures.add(completionService.submit(task)));
 
         try {
-            futures = executorService.invokeAll(callableTasks);
+            for (int i = 0; i < futures.size(); i++) {
+                if (getAndValidateMiningTask(completionService.take())) {
+                    return true;
+                }
+            }
+
+            return false;
         } catch (InterruptedException e) {
             return false;
+        } finally {
+            stopAllTasks(futures);
         }
-
-        findFirstTaskWithValidData(futures);
-        stopAllTasks(futures);
-
-        return true;
     }
 
     private void createFirstBlock() {
         long id = 1;
         long timestamp = new Date().getTime();
-        String previousHash = "0";
+        Hash256 previousHash = Hash256.ZERO;
         List<Transaction> transactions = new ArrayList<>();
         hashAndCreateBlock(id, timestamp, previousHash, transactions);
+        lastBlockTransactions = 0;
     }
 
-    private void createNextBlock() {
-        long id = blockchain.getNextId();
-        long timestamp = new Date().getTime();
-        String previousHash = blockchain.getLastHash();
+    /**
+     * The template was assembled while the previous block was mined, it only needs the previous hash
+     *
+     * @return false if interrupted while waiting for transactions
+     */
+    private boolean createNextBlock() {
+        BlockTemplateBuilder.Template template;
 
-        while (!blockchain.isPendingTransactions()) {
-            try {
-                TimeUnit.MILLISECONDS.sleep(MILLISECONDS_TO_WAIT_FOR_PENDING_MESSAGES);
-            } catch (InterruptedException e) {
-                return;
-            }
+        try {
+            template = templateBuilder.take();
+        } catch (InterruptedException e) {
+            return false;
         }
 
-        List<Transaction> transactions = blockchain.getAndClearPendingTransactions();
-        hashAndCreateBlock(id, timestamp, previousHash, transactions);
+        Blockchain.Block block = new Blockchain.Block(blockchain.getNextId(), template.getTimestamp(),
+                blockchain.getLastHash(), template.getTransactions(), template.getTransactionsDigest());
+        blockchain.addBlockToChain(block);
+        lastBlockTransactions = template.getTransactions().size();
+
+        return true;
     }
 
-    private void hashAndCreateBlock(long id, long timestamp, String previousHash, List<Transaction> transactions) {
+    private void hashAndCreateBlock(long id, long timestamp, Hash256 previousHash, List<Transaction> transactions) {
         Blockchain.Block block = new Blockchain.Block(id, timestamp, previousHash, transactions);
         blockchain.addBlockToChain(block);
     }
@@ -137,46 +390,41 @@ public class Miner {
         }
     }
 
-    private void findFirstTaskWithValidData(List<Future<Optional<MiningTaskRecord>>> futures) {
-        boolean foundValidatedBlock = false;
-
-        while (!foundValidatedBlock) {
-            for (var future : futures) {
-                if (future.isDone()) {
-                    foundValidatedBlock = getAndValidateMiningTask(future);
-
-                    if (foundValidatedBlock) {
-                        break;
-                    }
-                }
-            }
-        }
-    }
-
-    private boolean getAndValidateMiningTask(Future<Optional<MiningTaskRecord>> future) {
+    /* The future is done, as the completion service handed it out */
+    private boolean getAndValidateMiningTask(Future<Optional<MiningTaskRecord>> future) throws InterruptedException {
         MiningTaskRecord record;
 
         try {
-            Optional<MiningTaskRecord> recordOptional = future.get(FUTURE_GET_TIMEOUT, TimeUnit.MILLISECONDS);
+            Optional<MiningTaskRecord> recordOptional = future.get();
 
             if (recordOptional.isEmpty()) {
                 return false;
             }
 
             record = recordOptional.get();
-        } catch (InterruptedException | TimeoutException e) {
+        } catch (CancellationException e) {
             return false;
         } catch (ExecutionException e) {
             e.printStackTrace();
             return false;
         }
 
-        if (!StringUtil.doesStringStartWithNumberOfZeros(record.getHash(), blockchain.getNumberOfZeros())) {
+        if (!record.getHash().hasLeadingZeros(blockchain.getNumberOfZeros())) {
             return false;
         }
 
         updateLastBlock(record);
+        BlockchainEvents.BlockCommitted committedEvent = new BlockchainEvents.BlockCommitted();
+
+        if (committedEvent.shouldCommit()) {
+            committedEvent.blockId = blockchain.getLastId();
+            committedEvent.miner = record.getMiner().getName();
+            committedEvent.commitLatency = System.nanoTime() - record.getFoundNanos();
+            committedEvent.commit();
+        }
+
         adjustNumberOfZeros(record);
+        takeSnapshotIfDue();
 
         return true;
     }
@@ -187,18 +435,22 @@ public class Miner {
         lastBlock.setMagicNumber(record.getMagicNumber());
         lastBlock.setTimeGenerating(record.getTimeGenerating());
         Entity miner = record.getMiner();
-        lastBlock.setMiner(miner);
+        lastBlock.setMinerName(miner.getName());
         lastBlock.setMinerAward(String.format(Blockchain.MINER_AWARD_FORMAT,
                 miner.getName(), Blockchain.AWARD_AMOUNT));
+        // only the miner whose block is sealed gets the award, as the committed state has it
+        synchronized (blockchain) {
+            miner.increaseAmountBy(Blockchain.AWARD_AMOUNT);
+        }
     }
 
     private void adjustNumberOfZeros(MiningTaskRecord record) {
         long secondsGenerating = record.getTimeGenerating();
 
-        if (secondsGenerating > DECREMENT_AFTER_SECONDS) {
+        if (secondsGenerating > config.getDecrementAfterSeconds()) {
             blockchain.decrementNumberOfZeros();
             blockchain.setLastChangeNMessage("N was decreased by 1");
-        } else if (secondsGenerating < INCREMENT_AFTER_SECONDS) {
+        } else if (secondsGenerating < config.getIncrementAfterSeconds()) {
             blockchain.incrementNumberOfZeros();
             blockchain.setLastChangeNMessage("N was increased to " + blockchain.getNumberOfZeros());
         } else {
@@ -206,6 +458,24 @@ public class Miner {
         }
     }
 
+    private void takeSnapshotIfDue() {
+        long interval = config.getSnapshotInterval();
+
+        if (interval <= 0 || blockchain.getLastId() % interval != 0) {
+            return;
+        }
+
+        // captured now, while the block is the last one, and written by the persistence threads
+        StateSnapshot snapshot = blockchain.captureSnapshot();
+        scheduler.persist(() -> {
+            blockchain.writeSnapshot(snapshot);
+
+            if (config.isPruneBodies()) {
+                blockchain.pruneBodies((int) config.getBodyRetentionBlocks());
+            }
+        });
+    }
+
     private void stopAllTasks(List<Future<Optional<MiningTaskRecord>>> futures) {
         for (var future : futures) {
             if (!future.isDone()) {
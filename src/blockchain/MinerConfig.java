@@ -0,0 +1,142 @@
+package blockchain;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * The settings of a {@link Miner}, read from a properties file, see blockchain.properties.  A setting that is not
+ * in the file keeps its default, which for a daemon is to mine until stopped, save a checkpoint every
+ * {@link #DAEMON_CHECKPOINT_INTERVAL} blocks and report throughput every minute.
+ */
+class MinerConfig {
+    static final String DEFAULT_FILE_NAME = "blockchain.properties";
+    private static final int DAEMON_CHECKPOINT_INTERVAL = 10;
+    private static final int DAEMON_REPORT_INTERVAL_SECONDS = 60;
+
+    private final Properties properties;
+    private final boolean daemon;
+
+    private MinerConfig(Properties properties, boolean daemon) {
+        this.properties = properties;
+        this.daemon = daemon;
+    }
+
+    /* A missing file is not an error, all settings keep their defaults then */
+    static MinerConfig load(String fileName, boolean daemon) {
+        Properties properties = new Properties();
+
+        if (Files.exists(Paths.get(fileName))) {
+            try (Reader reader = new FileReader(fileName)) {
+                properties.load(reader);
+                System.out.println("Settings read from " + fileName);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        MinerConfig config = new MinerConfig(properties, daemon);
+        // bad settings stop the miner before it starts, not at the first snapshot
+        config.getSnapshotInterval();
+        config.getBodyRetentionBlocks();
+
+        return config;
+    }
+
+    boolean isDaemon() {
+        return daemon;
+    }
+
+    /* The number of blocks to mine, 0 to mine until stopped */
+    long getBlocks() {
+        return getLong("blocks", daemon ? 0 : 15);
+    }
+
+    String getDataDirectory() {
+        return properties.getProperty("dataDirectory", ".");
+    }
+
+    /* The file the chain is saved to, in the data directory */
+    Path getChainFile() {
+        return Paths.get(getDataDirectory(), properties.getProperty("chainFile", "blockchain.bin"));
+    }
+
+    /* Blocks between saves of the chain file while mining, 0 to save it only when mining stops */
+    long getCheckpointInterval() {
+        return getLong("checkpointInterval", daemon ? DAEMON_CHECKPOINT_INTERVAL : 0);
+    }
+
+    /* 0 for no snapshots, and then no pruning either */
+    long getSnapshotInterval() {
+        long interval = getLong("snapshotInterval", 5);
+
+        if (interval < 0) {
+            throw new IllegalArgumentException(String.format("snapshotInterval = %d is negative", interval));
+        }
+
+        return interval;
+    }
+
+    boolean isPruneBodies() {
+        return Boolean.parseBoolean(properties.getProperty("pruneBodies", "false"));
+    }
+
+    /* At least 1, so that the block of the latest snapshot keeps its body */
+    long getBodyRetentionBlocks() {
+        long blocks = getLong("bodyRetentionBlocks", 10);
+
+        if (blocks < 1) {
+            throw new IllegalArgumentException(String.format("bodyRetentionBlocks = %d is less than 1", blocks));
+        }
+
+        return blocks;
+    }
+
+    /* The difficulty goes down if a block took longer than this */
+    long getDecrementAfterSeconds() {
+        return getLong("decrementAfterSeconds", 1);
+    }
+
+    /* The difficulty goes up if a block took less than this */
+    long getIncrementAfterSeconds() {
+        return getLong("incrementAfterSeconds", 0);
+    }
+
+    /* 0 for no ingress server; -Dblockchain.ingressPort still works when the file does not set it */
+    int getIngressPort() {
+        return (int) getLong("ingressPort", Integer.getInteger("blockchain.ingressPort", 0));
+    }
+
+    /* 0 for no mining coordinator; -Dblockchain.poolPort still works when the file does not set it */
+    int getPoolPort() {
+        return (int) getLong("poolPort", Integer.getInteger("blockchain.poolPort", 0));
+    }
+
+    /* Seconds between throughput reports, 0 for none */
+    long getReportIntervalSeconds() {
+        return getLong("reportIntervalSeconds", daemon ? DAEMON_REPORT_INTERVAL_SECONDS : 0);
+    }
+
+    /* How long a shutdown waits for the block being mined before it stops mining it */
+    long getShutdownGraceSeconds() {
+        return getLong("shutdownGraceSeconds", 30);
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s = %s is not a number", key, value), e);
+        }
+    }
+}
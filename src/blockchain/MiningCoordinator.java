@@ -0,0 +1,190 @@
+package blockchain;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out mining work to {@link MiningWorker} processes over a local port, much like a mining pool.  Each worker
+ * gets the header prefix of the current job and a range of nonces, and reports back shares and solutions, see
+ * {@link PoolProtocol}.  Workers can come and go at any time; the ones that are connected when a job is submitted
+ * start on it straight away, the others when they say hello.
+ */
+class MiningCoordinator {
+    private static final long NONCES_PER_RANGE = 1L << 22;
+    private static final int SHARE_ZEROS_BELOW_TARGET = 2;
+
+    private static final class Job {
+        private final int id;
+        private final String prefix;
+        private final int numberOfZeros;
+        private final int shareZeros;
+        private final CompletableFuture<Long> solution = new CompletableFuture<>();
+
+        Job(int id, String prefix, int numberOfZeros) {
+            this.id = id;
+            this.prefix = prefix;
+            this.numberOfZeros = numberOfZeros;
+            this.shareZeros = Math.max(0, numberOfZeros - SHARE_ZEROS_BELOW_TARGET);
+        }
+    }
+
+    /* Kept by name, so a worker that reconnects carries on with its figures */
+    private static final class WorkerStats {
+        private final long firstSeenNanos = System.nanoTime();
+        private double estimatedHashes;
+        private long shares;
+        private long invalidShares;
+        private long solutions;
+        private boolean connected;
+
+        double getHashRate() {
+            return estimatedHashes / ((System.nanoTime() - firstSeenNanos) / 1e9);
+        }
+    }
+
+    private final FrameTransport transport;
+    private final Thread thread;
+    private final Map<FrameChannel, String> workerNames = new ConcurrentHashMap<>();
+    private final Map<String, WorkerStats> workerStats = new LinkedHashMap<>();
+    private Job currentJob;
+    private int nextJobId = 1;
+    private long nextNonce = Sha256Midstate.MIN_NONCE;
+
+    MiningCoordinator(int port) throws IOException {
+        transport = new FrameTransport(port, this::receive);
+        transport.setDisconnectHandler(this::disconnected);
+        thread = new Thread(transport, "mining-coordinator");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() throws InterruptedException {
+        transport.close();
+        thread.join();
+    }
+
+    /**
+     * Makes the prefix the current job, replacing the previous one
+     *
+     * @return completes with the nonce that solves the job
+     */
+    synchronized CompletableFuture<Long> submit(String prefix, int numberOfZeros) {
+        currentJob = new Job(nextJobId++, prefix, numberOfZeros);
+        workerNames.keySet().forEach(this::sendRange);
+
+        return currentJob.solution;
+    }
+
+    /* Stops the workers on the job if it is still the current one */
+    synchronized void cancel(CompletableFuture<Long> solution) {
+        if (currentJob != null && currentJob.solution == solution) {
+            currentJob = null;
+            sendToAll(PoolProtocol.idle());
+        }
+    }
+
+    synchronized String getStats() {
+        if (workerStats.isEmpty()) {
+            return "No mining workers connected";
+        }
+
+        return workerStats.entrySet().stream()
+                .map(e -> String.format("Worker %s (%s): %,.0f hashes/s, %d shares, %d invalid, %d solutions",
+                        e.getKey(), e.getValue().connected ? "connected" : "gone", e.getValue().getHashRate(),
+                        e.getValue().shares, e.getValue().invalidShares, e.getValue().solutions))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private void receive(FrameChannel worker, byte[] frame) {
+        PoolProtocol.Message message;
+
+        try {
+            message = PoolProtocol.decode(frame);
+        } catch (IOException e) {
+            System.out.println("Malformed message from a mining worker: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            switch (message.getType()) {
+                case HELLO:
+                    workerNames.put(worker, message.getText());
+                    workerStats.computeIfAbsent(message.getText(), name -> new WorkerStats()).connected = true;
+                    sendRange(worker);
+                    break;
+                case SHARE:
+                case SOLUTION:
+                    receiveShare(worker, message);
+                    break;
+                case RANGE_DONE:
+                    if (currentJob != null && currentJob.id == message.getJobId()) {
+                        sendRange(worker);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void receiveShare(FrameChannel worker, PoolProtocol.Message message) {
+        WorkerStats stats = workerStats.get(workerNames.get(worker));
+
+        // shares for an earlier job are stale rather than invalid
+        if (stats == null || currentJob == null || currentJob.id != message.getJobId()) {
+            return;
+        }
+
+        Hash256 hash = StringUtil.sha256(currentJob.prefix + message.getNonce());
+
+        if (!hash.hasLeadingZeros(currentJob.shareZeros)) {
+            stats.invalidShares++;
+            return;
+        }
+
+        stats.shares++;
+        stats.estimatedHashes += Math.pow(16, currentJob.shareZeros);
+
+        if (hash.hasLeadingZeros(currentJob.numberOfZeros)) {
+            stats.solutions++;
+            currentJob.solution.complete(message.getNonce());
+            currentJob = null;
+            sendToAll(PoolProtocol.idle());
+        }
+    }
+
+    private synchronized void disconnected(FrameChannel worker) {
+        String name = workerNames.remove(worker);
+
+        if (name != null) {
+            workerStats.get(name).connected = false;
+        }
+    }
+
+    private void sendRange(FrameChannel worker) {
+        if (currentJob == null) {
+            return;
+        }
+
+        long firstNonce = nextNonce;
+        nextNonce += NONCES_PER_RANGE;
+
+        if (!Sha256Midstate.isValidNonce(nextNonce + NONCES_PER_RANGE)) {
+            nextNonce = Sha256Midstate.MIN_NONCE;
+        }
+
+        PoolProtocol.Message job = PoolProtocol.job(currentJob.id, currentJob.prefix, currentJob.numberOfZeros,
+                currentJob.shareZeros, firstNonce, NONCES_PER_RANGE);
+        transport.send(worker, FrameChannel.encode(PoolProtocol.encode(job)));
+    }
+
+    private void sendToAll(PoolProtocol.Message message) {
+        transport.broadcast(FrameChannel.encode(PoolProtocol.encode(message)), null);
+    }
+}
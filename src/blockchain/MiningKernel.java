@@ -0,0 +1,21 @@
+package blockchain;
+
+/**
+ * Searches a range of magic numbers for one that gives a hash with enough leading zeros.  All magic numbers
+ * in a range must have {@link Sha256Midstate#NONCE_DIGITS} digits, so they can share one midstate.
+ */
+interface MiningKernel {
+    long NOT_FOUND = -1;
+
+    /* How many magic numbers are hashed at once */
+    int getLanes();
+
+    /**
+     * @return the first magic number in [firstNonce, firstNonce + nonces) whose hash starts with the given number
+     *         of hex zeros, or {@link #NOT_FOUND}
+     */
+    long search(Sha256Midstate midstate, long firstNonce, int nonces, int numberOfZeros);
+
+    /* The full digests of getLanes() consecutive magic numbers, for checking the kernel */
+    int[][] digests(Sha256Midstate midstate, long firstNonce);
+}
@@ -0,0 +1,135 @@
+package blockchain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Loads the optional VectorSha256Kernel, which is compiled separately, from src-vector.  It is only used if it
+ * was asked for with -Dblockchain.vectorMining=true, the jdk.incubator.vector module was added with
+ * --add-modules jdk.incubator.vector, it was compiled, and it gives the same digests as {@link MessageDigest}.
+ * Otherwise mining stays on the scalar path.
+ */
+public class MiningKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL_CLASS = "blockchain.VectorSha256Kernel";
+    private static final int[] SELF_TEST_PREFIX_LENGTHS = { 0, 17, 37, 38, 64, 100, 150, 201 };
+    private static final int BENCHMARK_NONCES = 1 << 20;
+
+    private MiningKernels() {
+    }
+
+    /* The vector kernel, or null to use the scalar path */
+    static MiningKernel load() {
+        if (!Boolean.getBoolean("blockchain.vectorMining")) {
+            return null;
+        }
+
+        MiningKernel kernel = loadVectorKernel();
+
+        if (kernel != null) {
+            System.out.printf("Mining with the %d lane vector SHA-256 kernel%n", kernel.getLanes());
+        }
+
+        return kernel;
+    }
+
+    /* For the processes that do nothing but mine, which never want the slow path */
+    static MiningKernel loadOrScalar() {
+        MiningKernel kernel = load();
+
+        return kernel != null ? kernel : new ScalarSha256Kernel();
+    }
+
+    private static MiningKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            System.out.println("The vector API is not available, add --add-modules " + VECTOR_MODULE);
+            return null;
+        }
+
+        MiningKernel kernel;
+
+        try {
+            kernel = (MiningKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Could not load the vector mining kernel: " + e);
+            return null;
+        }
+
+        if (!agreesWithMessageDigest(kernel)) {
+            System.out.println("The vector mining kernel gives wrong digests, it will not be used");
+            return null;
+        }
+
+        return kernel;
+    }
+
+    /* Cross-checks the kernel against MessageDigest for prefixes that leave one or two tail blocks */
+    static boolean agreesWithMessageDigest(MiningKernel kernel) {
+        Random random = new Random();
+
+        for (int prefixLength : SELF_TEST_PREFIX_LENGTHS) {
+            byte[] prefix = new byte[prefixLength];
+
+            for (int i = 0; i < prefixLength; i++) {
+                prefix[i] = (byte) (' ' + random.nextInt(95));
+            }
+
+            long firstNonce = Sha256Midstate.MIN_NONCE + random.nextInt(Integer.MAX_VALUE);
+            int[][] digests = kernel.digests(new Sha256Midstate(prefix), firstNonce);
+
+            for (int lane = 0; lane < kernel.getLanes(); lane++) {
+                byte[] expected = sha256(new String(prefix, StandardCharsets.UTF_8) + (firstNonce + lane));
+
+                for (int i = 0; i < 8; i++) {
+                    if (digests[lane][i] != Sha256Midstate.wordAt(expected, i * Integer.BYTES)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compares hashes per second of the scalar path and, if it can be loaded, the vector kernel
+     */
+    public static void main(String[] args) {
+        String prefix = "1" + System.currentTimeMillis() + "0" + StringUtil.sha256("transactions") +
+                String.format(Blockchain.MINER_AWARD_FORMAT, "miner1", Blockchain.AWARD_AMOUNT);
+        long startTime = System.nanoTime();
+
+        for (long nonce = Sha256Midstate.MIN_NONCE; nonce < Sha256Midstate.MIN_NONCE + BENCHMARK_NONCES; nonce++) {
+            StringUtil.sha256(prefix + nonce);
+        }
+
+        printHashRate("Scalar (MessageDigest)", startTime);
+        MiningKernel kernel = loadVectorKernel();
+
+        if (kernel != null) {
+            Sha256Midstate midstate = new Sha256Midstate(prefix.getBytes(StandardCharsets.UTF_8));
+            // twice, so the second run is measured after the JIT has compiled the kernel
+            for (int run = 0; run < 2; run++) {
+                startTime = System.nanoTime();
+                kernel.search(midstate, Sha256Midstate.MIN_NONCE, BENCHMARK_NONCES, 64);
+            }
+
+            printHashRate(String.format("Vector (%d lanes)", kernel.getLanes()), startTime);
+        }
+    }
+
+    private static void printHashRate(String kernelName, long startTime) {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%-24s %,12.0f hashes/s%n", kernelName, BENCHMARK_NONCES / seconds);
+    }
+
+    private static byte[] sha256(String input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
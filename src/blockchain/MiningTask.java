@@ -1,5 +1,6 @@
 package blockchain;
 
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Date;
@@ -7,6 +8,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -17,37 +19,83 @@ public class MiningTask implements Callable<Optional<MiningTaskRecord>> {
 
     private static final String SECURITY_ALGORITHM = "NativePRNG";
     private static final Random random = new Random(new Date().getTime());
+    private static final MiningKernel kernel = MiningKernels.load();
+    private static final int NONCES_PER_SEARCH = 4096;
+    private static final long NONCES_PER_BATCH_EVENT = 1 << 16;
+    private static final LongAdder hashesTried = new LongAdder();
+
+    /**
+     * What is hashed, with a magic number appended, to seal the last block for one miner, together with its
+     * midstate for the kernels.  They are made once a block for each miner, see {@link #createHeaders}, and
+     * shared by all the tasks mining it.
+     */
+    static final class Header {
+        private final Entity miner;
+        private final String text;
+        private final Sha256Midstate midstate;
+
+        private Header(Entity miner, String text) {
+            this.miner = miner;
+            this.text = text;
+            this.midstate = new Sha256Midstate(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Entity getMiner() {
+            return miner;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        Sha256Midstate getMidstate() {
+            return midstate;
+        }
+    }
 
     private final Blockchain blockchain;
+    private final Header header;
     private long magicNumber;
-    private String hash;
+    private Hash256 hash;
     private final Entity miner;
+    private long blockId;
+    private BlockchainEvents.MiningBatch batchEvent;
+    private long batchNonces;
 
-    public MiningTask(Blockchain blockchain) {
+    public MiningTask(Blockchain blockchain, Header header) {
         this.blockchain = blockchain;
-        this.miner = pickRandomMiner();
+        this.header = header;
+        this.miner = header.getMiner();
     }
 
     @Override
     public Optional<MiningTaskRecord> call() {
-        miner.increaseAmountBy(Blockchain.AWARD_AMOUNT);
         long startTime = System.currentTimeMillis();
+        blockId = blockchain.getLastId();
+        startBatchEvent();
         createHashWithNumberOfZeros(blockchain);
+        commitBatchEvent();
 
         if (Thread.currentThread().isInterrupted()) {
             return Optional.empty();
         }
 
+        BlockchainEvents.BlockFound foundEvent = new BlockchainEvents.BlockFound();
+
+        if (foundEvent.shouldCommit()) {
+            foundEvent.blockId = blockId;
+            foundEvent.miner = miner.getName();
+            foundEvent.magicNumber = magicNumber;
+            foundEvent.commit();
+        }
+
         long timeGenerating = (System.currentTimeMillis() - startTime) / 1000;
 
         return Optional.of(new MiningTaskRecord(magicNumber, hash, timeGenerating, miner));
     }
 
     private void createHashWithNumberOfZeros(Blockchain blockchain) {
-        String stringToHash = String.format("%s%s%s%s" + Blockchain.MINER_AWARD_FORMAT,
-                blockchain.getLastId(), blockchain.getLastTimestamp(),
-                blockchain.getLastPreviousHash(), blockchain.getLastTransactions(),
-                miner.getName(), Blockchain.AWARD_AMOUNT);
+        String stringToHash = header.getText();
         SecureRandom secureRandom;
 
         try {
@@ -57,19 +105,92 @@ public class MiningTask implements Callable<Optional<MiningTaskRecord>> {
             return;
         }
 
+        if (kernel != null) {
+            searchWithKernel(stringToHash, secureRandom);
+            return;
+        }
+
         do {
             magicNumber = secureRandom.nextLong();
-            hash = StringUtil.applySha256(stringToHash + magicNumber);
-        } while (!StringUtil.doesStringStartWithNumberOfZeros(hash, blockchain.getNumberOfZeros()) &&
+            hash = StringUtil.sha256(stringToHash + magicNumber);
+            countNonces(1);
+        } while (!hash.hasLeadingZeros(blockchain.getNumberOfZeros()) &&
                 !Thread.currentThread().isInterrupted());
     }
 
-    private Entity pickRandomMiner() {
-        List<Entity> miners = blockchain.getEntities().stream()
+    /* The kernel wants magic numbers with a fixed number of digits, so they run up from a random start */
+    private void searchWithKernel(String stringToHash, SecureRandom secureRandom) {
+        Sha256Midstate midstate = header.getMidstate();
+        long range = Sha256Midstate.MAX_NONCE - Sha256Midstate.MIN_NONCE - NONCES_PER_SEARCH;
+        long nonce = Sha256Midstate.MIN_NONCE + Math.floorMod(secureRandom.nextLong(), range);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long found = kernel.search(midstate, nonce, NONCES_PER_SEARCH, blockchain.getNumberOfZeros());
+            countNonces(found == MiningKernel.NOT_FOUND ? NONCES_PER_SEARCH : found - nonce + 1);
+
+            if (found != MiningKernel.NOT_FOUND) {
+                magicNumber = found;
+                hash = StringUtil.sha256(stringToHash + magicNumber);
+                return;
+            }
+
+            nonce += NONCES_PER_SEARCH;
+
+            if (!Sha256Midstate.isValidNonce(nonce + NONCES_PER_SEARCH)) {
+                nonce = Sha256Midstate.MIN_NONCE;
+            }
+        }
+    }
+
+    private void countNonces(long nonces) {
+        batchNonces += nonces;
+
+        if (batchNonces >= NONCES_PER_BATCH_EVENT) {
+            commitBatchEvent();
+            startBatchEvent();
+        }
+    }
+
+    private void startBatchEvent() {
+        batchEvent = new BlockchainEvents.MiningBatch();
+        batchEvent.begin();
+        batchNonces = 0;
+    }
+
+    private void commitBatchEvent() {
+        hashesTried.add(batchNonces);
+
+        if (batchEvent.shouldCommit()) {
+            batchEvent.blockId = blockId;
+            batchEvent.miner = miner.getName();
+            batchEvent.numberOfZeros = blockchain.getNumberOfZeros();
+            batchEvent.noncesTried = batchNonces;
+            batchEvent.commit();
+        }
+    }
+
+    /* By all mining tasks so far, counted a batch at a time */
+    static long getHashesTried() {
+        return hashesTried.sum();
+    }
+
+    /* The headers of the last block, one for each miner */
+    static List<Header> createHeaders(Blockchain blockchain) {
+        return blockchain.getEntities().stream()
                 .filter(Entity::isMiner)
+                .map(miner -> new Header(miner, createStringToHash(blockchain, miner)))
                 .collect(Collectors.toList());
-        int index = random.nextInt(miners.size());
+    }
+
+    private static String createStringToHash(Blockchain blockchain, Entity miner) {
+        return String.format("%s%s%s%s" + Blockchain.MINER_AWARD_FORMAT,
+                blockchain.getLastId(), blockchain.getLastTimestamp(),
+                blockchain.getLastPreviousHash(), blockchain.getLastTransactionsDigest(),
+                miner.getName(), Blockchain.AWARD_AMOUNT);
+    }
 
-        return miners.get(index);
+    /* The header of a random miner */
+    static Header pickRandomHeader(List<Header> headers) {
+        return headers.get(random.nextInt(headers.size()));
     }
 }
@@ -2,11 +2,12 @@ package blockchain;
 
 public class MiningTaskRecord {
     private final long magicNumber;
-    private final String hash;
+    private final Hash256 hash;
     private final long timeGenerating;
     private final Entity miner;
+    private final long foundNanos = System.nanoTime();
 
-    public MiningTaskRecord(long magicNumber, String hash, long timeGenerating, Entity miner) {
+    public MiningTaskRecord(long magicNumber, Hash256 hash, long timeGenerating, Entity miner) {
         this.magicNumber = magicNumber;
         this.hash = hash;
         this.timeGenerating = timeGenerating;
@@ -17,7 +18,7 @@ public class MiningTaskRecord {
         return magicNumber;
     }
 
-    public String getHash() {
+    public Hash256 getHash() {
         return hash;
     }
 
@@ -29,6 +30,11 @@ public class MiningTaskRecord {
         return miner;
     }
 
+    /* When the magic number was found, by System.nanoTime() */
+    long getFoundNanos() {
+        return foundNanos;
+    }
+
     @Override
     public String toString() {
         return String.format("MiningTaskRecord{magic# = %d, hash = %s, time generating = %d, miner = %s}",
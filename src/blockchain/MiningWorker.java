@@ -0,0 +1,177 @@
+package blockchain;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A standalone mining process.  It connects to the {@link MiningCoordinator} of a running {@link Miner}, mines
+ * the nonce ranges it is given on all of its threads and reports shares and solutions back.  If the connection
+ * is lost it keeps trying to reconnect, so workers can be started before the miner, and stopped and started
+ * again, at any time.
+ * <p>
+ * Usage: worker [port] [name] [threads]
+ */
+public class MiningWorker {
+    private static final int DEFAULT_PORT = 8556;
+    private static final int NONCES_PER_CHECK = 4096;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 500;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 10_000;
+
+    /* One job range, split between the threads of the worker */
+    private final class Range {
+        private final PoolProtocol.Message job;
+        private final Sha256Midstate midstate;
+        private final AtomicInteger slicesLeft = new AtomicInteger(threads);
+        private volatile boolean stopped;
+
+        Range(PoolProtocol.Message job) {
+            this.job = job;
+            this.midstate = new Sha256Midstate(job.getText().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void mineSlice(int slice) {
+            long sliceSize = job.getNonceCount() / threads;
+            long nonce = job.getNonce() + slice * sliceSize;
+            long end = slice == threads - 1 ? job.getNonce() + job.getNonceCount() : nonce + sliceSize;
+
+            while (nonce < end && !stopped) {
+                int nonces = (int) Math.min(NONCES_PER_CHECK, end - nonce);
+                long found = kernel.search(midstate, nonce, nonces, job.getShareZeros());
+
+                if (found == MiningKernel.NOT_FOUND) {
+                    nonce += nonces;
+                    continue;
+                }
+
+                if (StringUtil.sha256(job.getText() + found).hasLeadingZeros(job.getNumberOfZeros())) {
+                    stopped = true;
+                    send(PoolProtocol.solution(job.getJobId(), found));
+                    return;
+                }
+
+                send(PoolProtocol.share(job.getJobId(), found));
+                nonce = found + 1;
+            }
+
+            if (slicesLeft.decrementAndGet() == 0 && !stopped) {
+                send(PoolProtocol.rangeDone(job.getJobId()));
+            }
+        }
+    }
+
+    private final int port;
+    private final String name;
+    private final int threads;
+    private final MiningKernel kernel = MiningKernels.loadOrScalar();
+    private final ExecutorService executorService;
+    private OutputStream out;
+    private Range currentRange;
+
+    MiningWorker(int port, String name, int threads) {
+        this.port = port;
+        this.name = name;
+        this.threads = threads;
+        this.executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String name = args.length > 1 ? args[1] : "worker-" + ProcessHandle.current().pid();
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        new MiningWorker(port, name, threads).run();
+    }
+
+    void run() {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+        System.out.printf("Mining worker %s with %d threads, connecting to port %d%n", name, threads, port);
+
+        while (true) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.setTcpNoDelay(true);
+                System.out.println("Connected to the mining coordinator");
+                reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+
+                synchronized (this) {
+                    out = socket.getOutputStream();
+                }
+
+                send(PoolProtocol.hello(name));
+                receiveJobs(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            } catch (IOException e) {
+                String reason = e.getMessage() != null ? e.getMessage() : "connection closed";
+                System.out.printf("Not connected to the mining coordinator (%s), retrying in %d ms%n",
+                        reason, reconnectDelay);
+            }
+
+            stopCurrentRange();
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            reconnectDelay = Math.min(2 * reconnectDelay, MAX_RECONNECT_DELAY_MILLIS);
+        }
+
+        executorService.shutdownNow();
+    }
+
+    private void receiveJobs(DataInputStream in) throws IOException {
+        while (true) {
+            int length = in.readInt();
+
+            if (length < 0 || length > FrameChannel.MAX_FRAME_SIZE) {
+                throw new IOException("Bad frame length " + length);
+            }
+
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            PoolProtocol.Message message = PoolProtocol.decode(frame);
+            stopCurrentRange();
+
+            if (message.getType() == PoolProtocol.Type.JOB) {
+                startRange(message);
+            }
+        }
+    }
+
+    private synchronized void startRange(PoolProtocol.Message job) {
+        Range range = new Range(job);
+        currentRange = range;
+
+        for (int slice = 0; slice < threads; slice++) {
+            int thisSlice = slice;
+            executorService.execute(() -> range.mineSlice(thisSlice));
+        }
+    }
+
+    private synchronized void stopCurrentRange() {
+        if (currentRange != null) {
+            currentRange.stopped = true;
+            currentRange = null;
+        }
+    }
+
+    /* A lost connection is noticed by the reading side, so write errors are ignored here */
+    private synchronized void send(PoolProtocol.Message message) {
+        ByteBuffer frame = FrameChannel.encode(PoolProtocol.encode(message));
+
+        try {
+            out.write(frame.array(), 0, frame.limit());
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Could not send to the mining coordinator: " + e.getMessage());
+        }
+    }
+}
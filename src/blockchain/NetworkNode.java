@@ -0,0 +1,333 @@
+package blockchain;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * One node of a {@link NetworkSimulation}: its own chain, mempool and miner, gossiping transactions and
+ * blocks with its peers.  The node follows the branch with the most cumulative work, and reorganises its
+ * chain when a side branch overtakes it.
+ */
+class NetworkNode {
+    private static final long MAX_NODES = 1000;
+    private static final int MAX_TRANSACTIONS_PER_BLOCK = 500;
+    private static final int NONCES_BETWEEN_TIP_CHECKS = 256;
+    private static final int TRANSACTION_AMOUNT_BOUND = 10;
+
+    /* A block this node knows about, on the main chain or on a side branch */
+    private static final class KnownBlock {
+        private final Blockchain.Block block;
+        private final List<Transaction> transactions;
+        private final long height;
+        private final long cumulativeWork;
+
+        KnownBlock(Blockchain.Block block, List<Transaction> transactions, long height, long cumulativeWork) {
+            this.block = block;
+            this.transactions = transactions;
+            this.height = height;
+            this.cumulativeWork = cumulativeWork;
+        }
+    }
+
+    private final int index;
+    private final String name;
+    private final int numberOfZeros;
+    private final long workPerBlock;
+    private final long millisecondsBetweenTransactions;
+    private final NetworkStats stats;
+    private final Blockchain blockchain;
+    private final FrameTransport transport;
+    private final Random random = new Random();
+    private final Map<Hash256, KnownBlock> knownBlocks = new HashMap<>();
+    private final Map<Hash256, List<GossipMessage>> orphansByParent = new HashMap<>();
+    private final Set<Long> seenTransactions = new HashSet<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private KnownBlock tip;
+    private volatile int tipVersion;
+    private volatile boolean mining = true;
+    private long nextTransactionNumber = 1;
+
+    NetworkNode(int index, String dataDirectory, Blockchain.Block genesis, int numberOfZeros,
+                long millisecondsBetweenTransactions, NetworkStats stats) throws IOException {
+        this.index = index;
+        this.name = "node" + index;
+        this.numberOfZeros = numberOfZeros;
+        this.workPerBlock = 1L << (4 * numberOfZeros);
+        this.millisecondsBetweenTransactions = millisecondsBetweenTransactions;
+        this.stats = stats;
+        this.blockchain = new Blockchain(dataDirectory);
+        this.transport = new FrameTransport(this::receive);
+
+        blockchain.addBlockToChain(genesis, List.of());
+        tip = new KnownBlock(genesis, List.of(), genesis.getId(), 0);
+        knownBlocks.put(genesis.getHash(), tip);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    InetSocketAddress getAddress() throws IOException {
+        return transport.getAddress();
+    }
+
+    void connectTo(NetworkNode peer) throws IOException {
+        transport.connect(peer.getAddress());
+    }
+
+    void start() {
+        threads.add(new Thread(transport, name + "-transport"));
+        threads.add(new Thread(this::mine, name + "-miner"));
+        threads.add(new Thread(this::createTransactions, name + "-transactions"));
+        threads.forEach(Thread::start);
+    }
+
+    void stopMining() {
+        mining = false;
+    }
+
+    void stop() throws InterruptedException {
+        mining = false;
+        transport.close();
+
+        // the worker threads are not interrupted, as that would close the channels they read keys and bodies with
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    synchronized long getCumulativeWork() {
+        return tip.cumulativeWork;
+    }
+
+    synchronized long getHeight() {
+        return tip.height;
+    }
+
+    /* Transactions on the main chain, not counting the genesis block */
+    synchronized long getNumberOfChainTransactions() {
+        long count = 0;
+
+        for (long id = 2; id <= blockchain.getLastId(); id++) {
+            count += blockchain.getTransactionColumns(blockchain.getBlock(id)).size();
+        }
+
+        return count;
+    }
+
+    synchronized Hash256 getTipHash() {
+        return tip.block.getHash();
+    }
+
+    private void createTransactions() {
+        List<Entity> entities = blockchain.getEntities();
+
+        while (mining) {
+            Entity sender = entities.get(random.nextInt(entities.size()));
+            Entity receiver = entities.get(random.nextInt(entities.size()));
+            // IDs are unique across nodes as long as there are no more than MAX_NODES nodes
+            long id = nextTransactionNumber++ * MAX_NODES + index;
+            Transaction transaction = new Transaction(id, sender, receiver, random.nextInt(TRANSACTION_AMOUNT_BOUND) + 1);
+
+            synchronized (this) {
+                seenTransactions.add(id);
+                blockchain.addToPendingTransactions(transaction);
+            }
+
+            transport.broadcast(FrameChannel.encode(
+                    SerializationUtils.toBytes(GossipMessage.ofTransaction(transaction))), null);
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(millisecondsBetweenTransactions);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void mine() {
+        while (mining) {
+            int version;
+            KnownBlock parent;
+            List<Transaction> transactions;
+
+            synchronized (this) {
+                version = tipVersion;
+                parent = tip;
+                transactions = blockchain.getPendingTransactions(MAX_TRANSACTIONS_PER_BLOCK);
+            }
+
+            Blockchain.Block block = new Blockchain.Block(parent.height + 1, System.currentTimeMillis(),
+                    parent.block.getHash(), transactions);
+            block.detachTransactions();
+            block.setMinerName(name);
+            block.setMinerAward(String.format(Blockchain.MINER_AWARD_FORMAT, name, Blockchain.AWARD_AMOUNT));
+
+            if (findMagicNumber(block, version)) {
+                stats.recordMined(block.getHash());
+                GossipMessage message = GossipMessage.ofBlock(block, transactions, System.nanoTime());
+                receive(null, SerializationUtils.toBytes(message));
+            }
+        }
+    }
+
+    /* Returns false if the tip changed, or mining stopped, before a magic number was found */
+    private boolean findMagicNumber(Blockchain.Block block, int version) {
+        String prefix = block.getHashPrefix();
+        long magicNumber = random.nextLong();
+
+        while (mining && tipVersion == version) {
+            for (int i = 0; i < NONCES_BETWEEN_TIP_CHECKS; i++, magicNumber++) {
+                Hash256 hash = StringUtil.sha256(prefix + magicNumber);
+
+                if (hash.hasLeadingZeros(numberOfZeros)) {
+                    block.setMagicNumber(magicNumber);
+                    block.setHash(hash);
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /* Handles a frame from a peer, or from this node's own miner if the sender is null */
+    private void receive(FrameChannel sender, byte[] frame) {
+        GossipMessage message = (GossipMessage) SerializationUtils.fromBytes(frame);
+        boolean isNew;
+
+        synchronized (this) {
+            isNew = message.getType() == GossipMessage.Type.TRANSACTION
+                    ? receiveTransaction(message.getTransaction())
+                    : receiveBlock(message, sender != null);
+        }
+
+        if (isNew) {
+            transport.broadcast(FrameChannel.encode(frame), sender);
+        }
+    }
+
+    private boolean receiveTransaction(Transaction transaction) {
+        if (!seenTransactions.add(transaction.getId())) {
+            return false;
+        }
+
+        blockchain.addToPendingTransactions(transaction);
+
+        return true;
+    }
+
+    private boolean receiveBlock(GossipMessage message, boolean fromPeer) {
+        Blockchain.Block block = message.getBlock();
+
+        if (knownBlocks.containsKey(block.getHash()) || isOrphan(block)) {
+            return false;
+        }
+
+        if (fromPeer) {
+            stats.recordReceived(block.getHash(), System.nanoTime() - message.getMinedNanos());
+        }
+
+        if (!isValid(block, message.getTransactions())) {
+            return false;
+        }
+
+        KnownBlock parent = knownBlocks.get(block.getPreviousHash());
+
+        if (parent == null) {
+            orphansByParent.computeIfAbsent(block.getPreviousHash(), h -> new ArrayList<>()).add(message);
+            return true;
+        }
+
+        connect(parent, message);
+
+        return true;
+    }
+
+    private boolean isOrphan(Blockchain.Block block) {
+        List<GossipMessage> orphans = orphansByParent.getOrDefault(block.getPreviousHash(), List.of());
+
+        return orphans.stream().anyMatch(m -> m.getBlock().getHash().equals(block.getHash()));
+    }
+
+    private boolean isValid(Blockchain.Block block, List<Transaction> transactions) {
+        return block.getHash().equals(block.calculateHash()) &&
+                block.getHash().hasLeadingZeros(numberOfZeros) &&
+                block.getTransactionsDigest().equals(Blockchain.digestOf(transactions));
+    }
+
+    private void connect(KnownBlock parent, GossipMessage message) {
+        Blockchain.Block block = message.getBlock();
+        KnownBlock known = new KnownBlock(block, message.getTransactions(), parent.height + 1,
+                parent.cumulativeWork + workPerBlock);
+        knownBlocks.put(block.getHash(), known);
+        message.getTransactions().forEach(t -> seenTransactions.add(t.getId()));
+
+        if (known.cumulativeWork > tip.cumulativeWork) {
+            switchTipTo(known);
+        }
+
+        List<GossipMessage> children = orphansByParent.remove(block.getHash());
+
+        if (children != null) {
+            children.forEach(child -> connect(known, child));
+        }
+    }
+
+    private void switchTipTo(KnownBlock newTip) {
+        if (newTip.block.getPreviousHash().equals(tip.block.getHash())) {
+            blockchain.addBlockToChain(newTip.block, newTip.transactions);
+            blockchain.removeFromPendingTransactions(newTip.transactions);
+        } else {
+            reorganizeTo(newTip);
+        }
+
+        tip = newTip;
+        tipVersion++;
+    }
+
+    private void reorganizeTo(KnownBlock newTip) {
+        List<KnownBlock> branch = new ArrayList<>();
+        KnownBlock ancestor = newTip;
+
+        while (!isOnMainChain(ancestor)) {
+            branch.add(0, ancestor);
+            ancestor = knownBlocks.get(ancestor.block.getPreviousHash());
+        }
+
+        List<Transaction> disconnected = new ArrayList<>();
+
+        for (long id = ancestor.height + 1; id <= blockchain.getLastId(); id++) {
+            disconnected.addAll(blockchain.getTransactions(blockchain.getBlock(id)));
+        }
+
+        stats.recordReorg((int) (blockchain.getLastId() - ancestor.height));
+        blockchain.truncateTo(ancestor.height);
+        Set<Long> connectedIds = new HashSet<>();
+
+        for (KnownBlock known : branch) {
+            blockchain.addBlockToChain(known.block, known.transactions);
+            blockchain.removeFromPendingTransactions(known.transactions);
+            known.transactions.forEach(t -> connectedIds.add(t.getId()));
+        }
+
+        // transactions of the abandoned branch go back into the mempool
+        blockchain.returnToPendingTransactions(disconnected.stream()
+                .filter(t -> !connectedIds.contains(t.getId()))
+                .collect(Collectors.toList()));
+    }
+
+    private boolean isOnMainChain(KnownBlock known) {
+        return known.height <= blockchain.getLastId() &&
+                blockchain.getBlock(known.height).getHash().equals(known.block.getHash());
+    }
+}
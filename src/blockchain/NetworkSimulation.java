@@ -0,0 +1,128 @@
+package blockchain;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs several {@link NetworkNode}s in this process, connected over loopback sockets, and reports how well
+ * blocks propagate as the number of nodes grows.
+ */
+public class NetworkSimulation {
+    private static final int[] DEFAULT_NODE_COUNTS = { 2, 4, 8 };
+    private static final int SECONDS_PER_RUN = 30;
+    private static final int MILLISECONDS_TO_CONNECT = 200;
+    private static final int MILLISECONDS_TO_SETTLE = 2000;
+    private static final int NUMBER_OF_ZEROS = 4;
+    private static final int OUTGOING_CONNECTIONS_PER_NODE = 2;
+    private static final long MILLISECONDS_BETWEEN_TRANSACTIONS = 50;
+
+    public static void main(String[] args) {
+        int[] nodeCounts = args.length == 0
+                ? DEFAULT_NODE_COUNTS
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        SecurityKeyPair.createIfMissing();
+        System.out.printf("%-6s %-7s %-7s %-8s %-7s %-10s %-9s %-9s %-9s %-9s%n", "Nodes", "Mined", "Height",
+                "Orphans", "Reorgs", "Blocks/min", "Tx/s", "Recv p50", "Recv p99", "All p50");
+
+        for (int numberOfNodes : nodeCounts) {
+            try {
+                new NetworkSimulation().run(numberOfNodes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void run(int numberOfNodes) throws IOException, InterruptedException {
+        NetworkStats stats = new NetworkStats(numberOfNodes);
+        Blockchain.Block genesis = createGenesisBlock();
+        List<NetworkNode> nodes = new ArrayList<>();
+        List<Path> dataDirectories = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < numberOfNodes; i++) {
+                Path dataDirectory = Files.createTempDirectory("blockchain-node" + i);
+                dataDirectories.add(dataDirectory);
+                nodes.add(new NetworkNode(i, dataDirectory.toString(), genesis, NUMBER_OF_ZEROS,
+                        MILLISECONDS_BETWEEN_TRANSACTIONS, stats));
+            }
+
+            connect(nodes);
+            long startTime = System.nanoTime();
+            nodes.forEach(NetworkNode::start);
+            TimeUnit.SECONDS.sleep(SECONDS_PER_RUN);
+            nodes.forEach(NetworkNode::stopMining);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            TimeUnit.MILLISECONDS.sleep(MILLISECONDS_TO_SETTLE);
+
+            for (NetworkNode node : nodes) {
+                node.stop();
+            }
+
+            report(numberOfNodes, nodes, stats, seconds);
+        } finally {
+            dataDirectories.forEach(NetworkSimulation::deleteDirectory);
+        }
+    }
+
+    /* The block bodies the node wrote, and the directory itself */
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Every node dials the next few nodes around a ring, so blocks need several hops to reach everyone */
+    private void connect(List<NetworkNode> nodes) throws IOException, InterruptedException {
+        int size = nodes.size();
+
+        for (int i = 0; i < size; i++) {
+            for (int j = 1; j <= Math.min(OUTGOING_CONNECTIONS_PER_NODE, size - 1); j++) {
+                nodes.get(i).connectTo(nodes.get((i + j) % size));
+            }
+        }
+
+        TimeUnit.MILLISECONDS.sleep(MILLISECONDS_TO_CONNECT);
+    }
+
+    /* All nodes have to agree on the genesis block, so it is not mined */
+    private Blockchain.Block createGenesisBlock() {
+        Blockchain.Block genesis = new Blockchain.Block(1, 0, Hash256.ZERO, List.of());
+        genesis.detachTransactions();
+        genesis.setMinerAward("genesis");
+        genesis.setHash(genesis.calculateHash());
+
+        return genesis;
+    }
+
+    private void report(int numberOfNodes, List<NetworkNode> nodes, NetworkStats stats, double seconds) {
+        NetworkNode best = nodes.stream()
+                .max(Comparator.comparingLong(NetworkNode::getCumulativeWork))
+                .orElseThrow();
+        long chainBlocks = best.getHeight() - 1;
+        int mined = stats.getBlocksMined();
+        double orphanRate = mined == 0 ? 0 : 100.0 * (mined - chainBlocks) / mined;
+        long agreeing = nodes.stream().filter(n -> n.getTipHash().equals(best.getTipHash())).count();
+
+        System.out.printf("%-6d %-7d %-7d %-8s %-7s %-10.1f %-9.1f %-9.1f %-9.1f %-9.1f%n", numberOfNodes, mined,
+                chainBlocks, String.format("%.1f%%", orphanRate),
+                stats.getReorgs() + "/" + stats.getDeepestReorg(), chainBlocks * 60 / seconds,
+                best.getNumberOfChainTransactions() / seconds, stats.getReceiveLatencyMillis(50),
+                stats.getReceiveLatencyMillis(99), stats.getFullPropagationMillis(50));
+
+        if (agreeing < numberOfNodes) {
+            System.out.printf("       only %d of %d nodes agree on the tip%n", agreeing, numberOfNodes);
+        }
+    }
+}
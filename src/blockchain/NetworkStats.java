@@ -0,0 +1,61 @@
+package blockchain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects block propagation figures from all nodes of a {@link NetworkSimulation}.
+ */
+class NetworkStats {
+    private final int numberOfNodes;
+    private final LatencyRecorder receiveLatencies = new LatencyRecorder();
+    private final LatencyRecorder fullPropagationLatencies = new LatencyRecorder();
+    private final Map<Hash256, Integer> nodesReached = new HashMap<>();
+    private int blocksMined;
+    private int reorgs;
+    private int deepestReorg;
+
+    NetworkStats(int numberOfNodes) {
+        this.numberOfNodes = numberOfNodes;
+    }
+
+    synchronized void recordMined(Hash256 hash) {
+        blocksMined++;
+        nodesReached.put(hash, 1);
+    }
+
+    /* Called once per node, the first time the node sees the block */
+    synchronized void recordReceived(Hash256 hash, long latencyNanos) {
+        receiveLatencies.record(latencyNanos);
+        int reached = nodesReached.merge(hash, 1, Integer::sum);
+
+        if (reached == numberOfNodes) {
+            fullPropagationLatencies.record(latencyNanos);
+        }
+    }
+
+    synchronized void recordReorg(int depth) {
+        reorgs++;
+        deepestReorg = Math.max(deepestReorg, depth);
+    }
+
+    synchronized int getBlocksMined() {
+        return blocksMined;
+    }
+
+    synchronized int getReorgs() {
+        return reorgs;
+    }
+
+    synchronized int getDeepestReorg() {
+        return deepestReorg;
+    }
+
+    double getReceiveLatencyMillis(double percentile) {
+        return receiveLatencies.getPercentileMillis(percentile);
+    }
+
+    double getFullPropagationMillis(double percentile) {
+        return fullPropagationLatencies.getPercentileMillis(percentile);
+    }
+}
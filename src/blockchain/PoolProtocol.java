@@ -0,0 +1,166 @@
+package blockchain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The frames exchanged by the {@link MiningCoordinator} and its {@link MiningWorker}s.  Each starts with a type
+ * byte:
+ * <pre>
+ *     HELLO      worker to coordinator  UTF workerName
+ *     JOB        coordinator to worker  int jobId, UTF prefix, int numberOfZeros, int shareZeros,
+ *                                       long firstNonce, long nonceCount
+ *     IDLE       coordinator to worker  (nothing to mine)
+ *     SHARE      worker to coordinator  int jobId, long nonce
+ *     SOLUTION   worker to coordinator  int jobId, long nonce
+ *     RANGE_DONE worker to coordinator  int jobId
+ * </pre>
+ * A worker hashes prefix + nonce for every nonce of its range.  Hashes with shareZeros leading hex zeros are
+ * reported as shares, which is how the coordinator measures the hash rate of a worker, and a hash with
+ * numberOfZeros leading zeros solves the job.  Every frame is preceded by its length, see {@link FrameChannel}.
+ */
+class PoolProtocol {
+    enum Type { HELLO, JOB, IDLE, SHARE, SOLUTION, RANGE_DONE }
+
+    static final class Message {
+        private final Type type;
+        private final String text;
+        private final int jobId;
+        private final int numberOfZeros;
+        private final int shareZeros;
+        private final long nonce;
+        private final long nonceCount;
+
+        private Message(Type type, String text, int jobId, int numberOfZeros, int shareZeros, long nonce,
+                        long nonceCount) {
+            this.type = type;
+            this.text = text;
+            this.jobId = jobId;
+            this.numberOfZeros = numberOfZeros;
+            this.shareZeros = shareZeros;
+            this.nonce = nonce;
+            this.nonceCount = nonceCount;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        /* The worker name of a HELLO, or the prefix of a JOB */
+        String getText() {
+            return text;
+        }
+
+        int getJobId() {
+            return jobId;
+        }
+
+        int getNumberOfZeros() {
+            return numberOfZeros;
+        }
+
+        int getShareZeros() {
+            return shareZeros;
+        }
+
+        /* The nonce of a SHARE or SOLUTION, or the first nonce of a JOB */
+        long getNonce() {
+            return nonce;
+        }
+
+        long getNonceCount() {
+            return nonceCount;
+        }
+    }
+
+    private PoolProtocol() {
+    }
+
+    static Message hello(String workerName) {
+        return new Message(Type.HELLO, workerName, 0, 0, 0, 0, 0);
+    }
+
+    static Message job(int jobId, String prefix, int numberOfZeros, int shareZeros, long firstNonce,
+                       long nonceCount) {
+        return new Message(Type.JOB, prefix, jobId, numberOfZeros, shareZeros, firstNonce, nonceCount);
+    }
+
+    static Message idle() {
+        return new Message(Type.IDLE, "", 0, 0, 0, 0, 0);
+    }
+
+    static Message share(int jobId, long nonce) {
+        return new Message(Type.SHARE, "", jobId, 0, 0, nonce, 0);
+    }
+
+    static Message solution(int jobId, long nonce) {
+        return new Message(Type.SOLUTION, "", jobId, 0, 0, nonce, 0);
+    }
+
+    static Message rangeDone(int jobId) {
+        return new Message(Type.RANGE_DONE, "", jobId, 0, 0, 0, 0);
+    }
+
+    static byte[] encode(Message message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(message.type.ordinal());
+
+            switch (message.type) {
+                case HELLO:
+                    out.writeUTF(message.text);
+                    break;
+                case JOB:
+                    out.writeInt(message.jobId);
+                    out.writeUTF(message.text);
+                    out.writeInt(message.numberOfZeros);
+                    out.writeInt(message.shareZeros);
+                    out.writeLong(message.nonce);
+                    out.writeLong(message.nonceCount);
+                    break;
+                case SHARE:
+                case SOLUTION:
+                    out.writeInt(message.jobId);
+                    out.writeLong(message.nonce);
+                    break;
+                case RANGE_DONE:
+                    out.writeInt(message.jobId);
+                    break;
+                case IDLE:
+                    break;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static Message decode(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        int ordinal = in.readUnsignedByte();
+
+        if (ordinal >= Type.values().length) {
+            throw new IOException("Unknown message type " + ordinal);
+        }
+
+        switch (Type.values()[ordinal]) {
+            case HELLO:
+                return hello(in.readUTF());
+            case JOB:
+                return job(in.readInt(), in.readUTF(), in.readInt(), in.readInt(), in.readLong(), in.readLong());
+            case SHARE:
+                return share(in.readInt(), in.readLong());
+            case SOLUTION:
+                return solution(in.readInt(), in.readLong());
+            case RANGE_DONE:
+                return rangeDone(in.readInt());
+            default:
+                return idle();
+        }
+    }
+}
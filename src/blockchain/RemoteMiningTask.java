@@ -0,0 +1,55 @@
+package blockchain;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Mines the last block on the {@link MiningWorker}s connected to the {@link MiningCoordinator}, in competition
+ * with the local {@link MiningTask}s.
+ */
+public class RemoteMiningTask implements Callable<Optional<MiningTaskRecord>> {
+
+    private final Blockchain blockchain;
+    private final MiningCoordinator coordinator;
+    private final MiningTask.Header header;
+    private final Entity miner;
+
+    RemoteMiningTask(Blockchain blockchain, MiningCoordinator coordinator, MiningTask.Header header) {
+        this.blockchain = blockchain;
+        this.coordinator = coordinator;
+        this.header = header;
+        this.miner = header.getMiner();
+    }
+
+    @Override
+    public Optional<MiningTaskRecord> call() {
+        long startTime = System.currentTimeMillis();
+        String stringToHash = header.getText();
+        CompletableFuture<Long> solution = coordinator.submit(stringToHash, blockchain.getNumberOfZeros());
+        long magicNumber;
+
+        try {
+            magicNumber = solution.get();
+        } catch (InterruptedException e) {
+            coordinator.cancel(solution);
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+
+        long timeGenerating = (System.currentTimeMillis() - startTime) / 1000;
+        BlockchainEvents.BlockFound foundEvent = new BlockchainEvents.BlockFound();
+
+        if (foundEvent.shouldCommit()) {
+            foundEvent.blockId = blockchain.getLastId();
+            foundEvent.miner = miner.getName();
+            foundEvent.magicNumber = magicNumber;
+            foundEvent.commit();
+        }
+
+        return Optional.of(new MiningTaskRecord(magicNumber, StringUtil.sha256(stringToHash + magicNumber),
+                timeGenerating, miner));
+    }
+}
@@ -0,0 +1,43 @@
+package blockchain;
+
+/**
+ * Hashes one magic number at a time from a {@link Sha256Midstate}, for when the vector kernel is not available.
+ * Still quicker than hashing the whole prefix again with every magic number.
+ */
+final class ScalarSha256Kernel implements MiningKernel {
+
+    @Override
+    public int getLanes() {
+        return 1;
+    }
+
+    @Override
+    public long search(Sha256Midstate midstate, long firstNonce, int nonces, int numberOfZeros) {
+        int[] initialState = midstate.getState();
+        int[] digest = new int[initialState.length];
+        byte[] scratch = midstate.newScratch();
+        int[] tailWords = new int[midstate.getTailBlocks() * 16];
+        int[] words = new int[64];
+
+        for (long nonce = firstNonce; nonce < firstNonce + nonces; nonce++) {
+            System.arraycopy(initialState, 0, digest, 0, digest.length);
+            midstate.tailWords(nonce, scratch, tailWords);
+
+            for (int block = 0; block < midstate.getTailBlocks(); block++) {
+                System.arraycopy(tailWords, block * 16, words, 0, 16);
+                Sha256Midstate.compress(digest, words);
+            }
+
+            if (Sha256Midstate.hasLeadingZeros(digest, numberOfZeros)) {
+                return nonce;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    @Override
+    public int[][] digests(Sha256Midstate midstate, long firstNonce) {
+        return new int[][] { midstate.digest(firstNonce) };
+    }
+}
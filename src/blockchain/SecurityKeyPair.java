@@ -3,7 +3,12 @@ package blockchain;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 
 public class SecurityKeyPair {
 
@@ -29,6 +34,43 @@ public class SecurityKeyPair {
         }
     }
 
+    /**
+     * Generates a key pair and writes it to disk, unless both keys are already there
+     */
+    public static void createIfMissing() {
+        boolean privateKeyExists = Files.exists(Paths.get(PATH_TO_PRIVATE_KEY));
+        boolean publicKeyExists = Files.exists(Paths.get(PATH_TO_PUBLIC_KEY));
+
+        if (!privateKeyExists || !publicKeyExists) {
+            SecurityKeyPair keyPair = new SecurityKeyPair();
+            keyPair.writeKeyPairToFiles();
+        }
+    }
+
+    public static PrivateKey readPrivateKey() {
+        try {
+            byte[] keyBytes = Files.readAllBytes(new File(PATH_TO_PRIVATE_KEY).toPath());
+            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(keyBytes);
+            KeyFactory kf = KeyFactory.getInstance(KEY_PAIR_ALGORITHM);
+
+            return kf.generatePrivate(spec);
+        } catch (IOException | NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static PublicKey readPublicKey() {
+        try {
+            byte[] keyBytes = Files.readAllBytes(new File(PATH_TO_PUBLIC_KEY).toPath());
+            X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
+            KeyFactory kf = KeyFactory.getInstance(KEY_PAIR_ALGORITHM);
+
+            return kf.generatePublic(spec);
+        } catch (IOException | NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void writeKeyPairToFiles() {
         writeToFile(PATH_TO_PUBLIC_KEY, publicKey.getEncoded());
         writeToFile(PATH_TO_PRIVATE_KEY, privateKey.getEncoded());
@@ -7,6 +7,9 @@ public class SerializationUtils {
      * Serialize the given object to the file
      */
     public static void serialize(Object obj, String fileName) {
+        BlockchainEvents.Serialization event = new BlockchainEvents.Serialization();
+        event.begin();
+
         try (ObjectOutputStream oos =
                      new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))
         ) {
@@ -14,6 +17,8 @@ public class SerializationUtils {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        commitSerializationEvent(event, "save", fileName);
     }
 
     /**
@@ -25,6 +30,9 @@ public class SerializationUtils {
     public static Object deserialize(String fileName) {
         Object obj;
 
+        BlockchainEvents.Serialization event = new BlockchainEvents.Serialization();
+        event.begin();
+
         try (ObjectInputStream ois =
                       new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)))
         ) {
@@ -33,6 +41,44 @@ public class SerializationUtils {
             throw new RuntimeException(e);
         }
 
+        commitSerializationEvent(event, "load", fileName);
+
         return obj;
     }
+
+    private static void commitSerializationEvent(BlockchainEvents.Serialization event, String operation,
+                                                 String fileName) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.fileName = fileName;
+            event.bytes = new File(fileName).length();
+            event.commit();
+        }
+    }
+
+    /**
+     * Serialize the given object to a byte array
+     */
+    public static byte[] toBytes(Object obj) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(obj);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialize to an object from the byte array
+     */
+    public static Object fromBytes(byte[] bytes) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package blockchain;
+
+/**
+ * The SHA-256 state after the full 64 byte blocks of a fixed prefix, plus a template of the remaining
+ * block(s), into which the decimal digits of a magic number and the padding go.  Hashing prefix + magic number
+ * then only costs the compression of the tail, whatever the length of the prefix.
+ */
+final class Sha256Midstate {
+    static final int NONCE_DIGITS = 18;
+    static final long MIN_NONCE = 100_000_000_000_000_000L;
+    static final long MAX_NONCE = 999_999_999_999_999_999L;
+
+    static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+    private static final int[] INITIAL_STATE = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    private static final int BLOCK_BYTES = 64;
+
+    private final int[] state = INITIAL_STATE.clone();
+    private final byte[] tail;
+    private final int digitsOffset;
+
+    Sha256Midstate(byte[] prefix) {
+        int fullBlocks = prefix.length / BLOCK_BYTES;
+        int[] words = new int[64];
+
+        for (int block = 0; block < fullBlocks; block++) {
+            toWords(prefix, block * BLOCK_BYTES, words, 16);
+            compress(state, words);
+        }
+
+        int rest = prefix.length - fullBlocks * BLOCK_BYTES;
+        // the digits, the 0x80 end marker and the 64 bit length must fit after the rest of the prefix
+        tail = new byte[rest + NONCE_DIGITS + 1 + Long.BYTES <= BLOCK_BYTES ? BLOCK_BYTES : 2 * BLOCK_BYTES];
+        System.arraycopy(prefix, fullBlocks * BLOCK_BYTES, tail, 0, rest);
+        digitsOffset = rest;
+        tail[rest + NONCE_DIGITS] = (byte) 0x80;
+        long bitLength = (long) (prefix.length + NONCE_DIGITS) * 8;
+
+        for (int i = 0; i < Long.BYTES; i++) {
+            tail[tail.length - 1 - i] = (byte) (bitLength >>> (8 * i));
+        }
+    }
+
+    static boolean isValidNonce(long nonce) {
+        return nonce >= MIN_NONCE && nonce <= MAX_NONCE;
+    }
+
+    int[] getState() {
+        return state.clone();
+    }
+
+    int getTailBlocks() {
+        return tail.length / BLOCK_BYTES;
+    }
+
+    /* The words that differ between magic numbers are from this index up to and including getLastDigitWord() */
+    int getFirstDigitWord() {
+        return digitsOffset / Integer.BYTES;
+    }
+
+    int getLastDigitWord() {
+        return (digitsOffset + NONCE_DIGITS - 1) / Integer.BYTES;
+    }
+
+    /**
+     * Writes the tail, with the digits of the magic number filled in, as big-endian words
+     *
+     * @param scratch a copy of the tail template to write the digits into, see {@link #newScratch()}
+     */
+    void tailWords(long nonce, byte[] scratch, int[] words) {
+        for (int i = NONCE_DIGITS - 1; i >= 0; i--) {
+            scratch[digitsOffset + i] = (byte) ('0' + nonce % 10);
+            nonce /= 10;
+        }
+
+        for (int i = 0; i < tail.length / Integer.BYTES; i++) {
+            words[i] = wordAt(scratch, i * Integer.BYTES);
+        }
+    }
+
+    byte[] newScratch() {
+        return tail.clone();
+    }
+
+    /* The digest of prefix + nonce, the slow way round */
+    int[] digest(long nonce) {
+        int[] digest = getState();
+        int[] tailWords = new int[tail.length / Integer.BYTES];
+        tailWords(nonce, newScratch(), tailWords);
+        int[] words = new int[64];
+
+        for (int block = 0; block < getTailBlocks(); block++) {
+            System.arraycopy(tailWords, block * 16, words, 0, 16);
+            compress(digest, words);
+        }
+
+        return digest;
+    }
+
+    /* Compresses one block, given in the first 16 of the 64 words, into the state */
+    static void compress(int[] state, int[] words) {
+        for (int t = 16; t < 64; t++) {
+            int s0 = Integer.rotateRight(words[t - 15], 7) ^ Integer.rotateRight(words[t - 15], 18) ^
+                    (words[t - 15] >>> 3);
+            int s1 = Integer.rotateRight(words[t - 2], 17) ^ Integer.rotateRight(words[t - 2], 19) ^
+                    (words[t - 2] >>> 10);
+            words[t] = words[t - 16] + s0 + words[t - 7] + s1;
+        }
+
+        int a = state[0], b = state[1], c = state[2], d = state[3];
+        int e = state[4], f = state[5], g = state[6], h = state[7];
+
+        for (int t = 0; t < 64; t++) {
+            int t1 = h + (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25)) +
+                    ((e & f) ^ (~e & g)) + K[t] + words[t];
+            int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22)) +
+                    ((a & b) ^ (a & c) ^ (b & c));
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+
+    /* True if the digest, as hex, starts with the given number of zeros */
+    static boolean hasLeadingZeros(int[] digest, int numberOfZeros) {
+        int zeroBits = 4 * numberOfZeros;
+
+        for (int word : digest) {
+            if (zeroBits <= 0) {
+                return true;
+            }
+
+            if (Integer.numberOfLeadingZeros(word) < Math.min(32, zeroBits)) {
+                return false;
+            }
+
+            zeroBits -= 32;
+        }
+
+        return zeroBits <= 0;
+    }
+
+    private static void toWords(byte[] bytes, int offset, int[] words, int count) {
+        for (int i = 0; i < count; i++) {
+            words[i] = wordAt(bytes, offset + i * Integer.BYTES);
+        }
+    }
+
+    static int wordAt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 |
+                (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+}
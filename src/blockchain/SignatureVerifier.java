@@ -0,0 +1,65 @@
+package blockchain;
+
+import java.security.*;
+
+/**
+ * Checks transaction signatures against the public key on disk, which is read once.  Signatures found in the
+ * {@link VerifiedSignatureCache} are not verified again.
+ */
+class SignatureVerifier {
+    private final PublicKey publicKey;
+    private final VerifiedSignatureCache cache;
+
+    SignatureVerifier(VerifiedSignatureCache cache) {
+        this.publicKey = SecurityKeyPair.readPublicKey();
+        this.cache = cache;
+    }
+
+    boolean verify(Transaction transaction) {
+        byte[] signature = transaction.getSignature();
+
+        return verify(transaction.getSignedData(), signature, 0, signature.length);
+    }
+
+    /* Verifies a row in place, without copying its signature out of the columns */
+    boolean verify(TransactionColumns transactions, int row) {
+        return verify(transactions.getSignedData(row), transactions.getSignatureBuffer(),
+                transactions.getSignatureOffset(row), transactions.getSignatureLength(row));
+    }
+
+    private boolean verify(String signedData, byte[] signature, int offset, int length) {
+        BlockchainEvents.SignatureOperation event = new BlockchainEvents.SignatureOperation();
+        event.begin();
+        Hash256 key = VerifiedSignatureCache.keyOf(signedData, signature, offset, length);
+        boolean cached = cache.contains(key);
+        boolean valid = cached || verifyUncached(signedData, signature, offset, length);
+
+        if (valid && !cached) {
+            cache.add(key);
+        }
+
+        if (event.shouldCommit()) {
+            event.operation = "verify";
+            event.cached = cached;
+            event.valid = valid;
+            event.commit();
+        }
+
+        return valid;
+    }
+
+    /* A signature that cannot even be checked, such as one of the wrong length, is just not valid */
+    private boolean verifyUncached(String signedData, byte[] signature, int offset, int length) {
+        try {
+            Signature sig = Signature.getInstance(SecurityKeyPair.SIGNATURE_ALGORITHM);
+            sig.initVerify(publicKey);
+            sig.update(signedData.getBytes());
+
+            return sig.verify(signature, offset, length);
+        } catch (SignatureException e) {
+            return false;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
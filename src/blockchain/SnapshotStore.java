@@ -0,0 +1,100 @@
+package blockchain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes {@link StateSnapshot}s to disk, one file per snapshot height.  Snapshots can be ahead of the saved
+ * chain, so which ones are kept is up to {@link Blockchain}.
+ */
+class SnapshotStore {
+    private static final String DIRECTORY = "snapshots";
+    private static final String FILE_NAME_FORMAT = "snapshot-%d.bin";
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private final File directory;
+
+    SnapshotStore(String dataDirectory) {
+        this.directory = new File(dataDirectory, DIRECTORY);
+    }
+
+    /* Through a temporary file, so a crash while writing cannot leave half a snapshot */
+    void write(StateSnapshot snapshot) {
+        directory.mkdirs();
+        File file = getFile(snapshot.getHeight());
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        SerializationUtils.serialize(snapshot, temporaryFile.getPath());
+
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Null if the file cannot be read */
+    StateSnapshot read(long height) {
+        try {
+            return (StateSnapshot) SerializationUtils.deserialize(getFile(height).getPath());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    void delete(long height) {
+        getFile(height).delete();
+    }
+
+    /* The heights of the snapshots on disk, newest first */
+    long[] getHeights() {
+        File[] files = getSnapshotFiles();
+        long[] heights = new long[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            heights[i] = getHeight(files[files.length - 1 - i]);
+        }
+
+        return heights;
+    }
+
+    /* Leaves those above the height alone */
+    void deleteAllButNewest(int snapshotsToKeep, long upToHeight) {
+        int kept = 0;
+
+        for (long height : getHeights()) {
+            if (height <= upToHeight && kept++ >= snapshotsToKeep) {
+                delete(height);
+            }
+        }
+    }
+
+    private File getFile(long height) {
+        return new File(directory, String.format(FILE_NAME_FORMAT, height));
+    }
+
+    /* Snapshot files, oldest first */
+    private File[] getSnapshotFiles() {
+        File[] files = directory.listFiles((dir, name) -> FILE_NAME_PATTERN.matcher(name).matches());
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(SnapshotStore::getHeight));
+
+        return files;
+    }
+
+    private static long getHeight(File file) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(file.getName());
+
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+}
@@ -0,0 +1,62 @@
+package blockchain;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The balances of all entities and the next transaction ID at a given height of the chain.  The snapshot
+ * is committed to by a hash over its contents, including the hash of the block it was taken at.
+ */
+public class StateSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long height;
+    private final Hash256 lastBlockHash;
+    private final Map<String, Integer> balances = new LinkedHashMap<>();
+    private final long nextTransactionId;
+    private final Hash256 hash;
+
+    StateSnapshot(long height, Hash256 lastBlockHash, Map<String, Integer> balances, long nextTransactionId) {
+        this.height = height;
+        this.lastBlockHash = lastBlockHash;
+        this.balances.putAll(balances);
+        this.nextTransactionId = nextTransactionId;
+        this.hash = calculateHash();
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public Hash256 getLastBlockHash() {
+        return lastBlockHash;
+    }
+
+    public Map<String, Integer> getBalances() {
+        return Collections.unmodifiableMap(balances);
+    }
+
+    public long getNextTransactionId() {
+        return nextTransactionId;
+    }
+
+    public Hash256 getHash() {
+        return hash;
+    }
+
+    public boolean verify() {
+        return hash.equals(calculateHash());
+    }
+
+    private Hash256 calculateHash() {
+        return StringUtil.sha256(String.format("%d%s%s%d", height, lastBlockHash, balances, nextTransactionId));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StateSnapshot{height = %d, next transaction ID = %d, hash = %s}",
+                height, nextTransactionId, hash);
+    }
+}
@@ -5,35 +5,15 @@ import java.security.MessageDigest;
 
 class StringUtil {
 
-    /* Applies Sha256 to a string and returns a hash. */
-    public static String applySha256(String input) {
+    /* Applies Sha256 to a string, without hex encoding the digest */
+    public static Hash256 sha256(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
 
-            /* Applies sha256 to our input */
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte elem : hash) {
-                String hex = Integer.toHexString(0xff & elem);
-
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-
-                hexString.append(hex);
-            }
-
-            return hexString.toString();
+            return Hash256.of(digest.digest(input.getBytes(StandardCharsets.UTF_8)));
         }
         catch(Exception e) {
             throw new RuntimeException(e);
         }
     }
-
-    public static boolean doesStringStartWithNumberOfZeros(String str, int numberOfZeros) {
-        String zeros = "0".repeat(Math.max(0, numberOfZeros));
-
-        return str.startsWith(zeros);
-    }
 }
\ No newline at end of file
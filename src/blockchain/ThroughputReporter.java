@@ -0,0 +1,90 @@
+package blockchain;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the throughput of the miner over the last interval: blocks per minute, committed transactions per second,
+ * hash rate and the p50/p99 commit latency of the blocks, from the start of mining a block to it being sealed.
+ * Heap use and GC time go with it, so a long run shows drift and growth, and the hit rate of the block body
+ * cache, which drops once the blocks that are read no longer fit in it.
+ */
+class ThroughputReporter {
+    private static final long BYTES_PER_MB = 1024 * 1024;
+
+    private final long intervalSeconds;
+    private final Blockchain blockchain;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "throughput-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private LatencyRecorder commitLatencies = new LatencyRecorder();
+    private int blocks;
+    private long transactions;
+    private long windowStartNanos = System.nanoTime();
+    private long windowStartHashes = MiningTask.getHashesTried();
+    private long windowStartGcMillis = getGcMillis();
+    private long windowStartBodyCacheHits;
+    private long windowStartBodyCacheMisses;
+
+    ThroughputReporter(long intervalSeconds, Blockchain blockchain) {
+        this.intervalSeconds = intervalSeconds;
+        this.blockchain = blockchain;
+        this.windowStartBodyCacheHits = blockchain.getBodyCacheHits();
+        this.windowStartBodyCacheMisses = blockchain.getBodyCacheMisses();
+    }
+
+    void start() {
+        timer.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        timer.shutdownNow();
+    }
+
+    synchronized void recordBlock(int blockTransactions, long commitLatencyNanos) {
+        blocks++;
+        transactions += blockTransactions;
+        commitLatencies.record(commitLatencyNanos);
+    }
+
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = (now - windowStartNanos) / 1e9;
+        long hashes = MiningTask.getHashesTried();
+        long gcMillis = getGcMillis();
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        long bodyCacheHits = blockchain.getBodyCacheHits();
+        long bodyCacheMisses = blockchain.getBodyCacheMisses();
+        long windowBodyCacheHits = bodyCacheHits - windowStartBodyCacheHits;
+        long bodyCacheReads = windowBodyCacheHits + bodyCacheMisses - windowStartBodyCacheMisses;
+        double bodyCacheHitRate = bodyCacheReads == 0 ? 0 : 100.0 * windowBodyCacheHits / bodyCacheReads;
+
+        System.out.printf("Last %.0f s: %.1f blocks/min, %.1f tx/s, %,.0f hashes/s, commit latency p50 %.0f ms, " +
+                        "p99 %.0f ms, heap %d MB, GC %d ms, body cache hit rate %.1f%% of %d reads%n",
+                seconds, blocks * 60 / seconds, transactions / seconds, (hashes - windowStartHashes) / seconds,
+                commitLatencies.getPercentileMillis(50), commitLatencies.getPercentileMillis(99),
+                heapUsed / BYTES_PER_MB, gcMillis - windowStartGcMillis, bodyCacheHitRate, bodyCacheReads);
+
+        commitLatencies = new LatencyRecorder();
+        blocks = 0;
+        transactions = 0;
+        windowStartNanos = now;
+        windowStartHashes = hashes;
+        windowStartGcMillis = gcMillis;
+        windowStartBodyCacheHits = bodyCacheHits;
+        windowStartBodyCacheMisses = bodyCacheMisses;
+    }
+
+    private static long getGcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(millis -> millis > 0)
+                .sum();
+    }
+}
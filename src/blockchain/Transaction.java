@@ -1,17 +1,17 @@
 package blockchain;
 
-import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
-import java.nio.file.Files;
 import java.security.*;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
 
 public class Transaction implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /* Read from disk once, when the first transaction is signed */
+    private static final class PrivateKeyHolder {
+        private static final PrivateKey PRIVATE_KEY = SecurityKeyPair.readPrivateKey();
+    }
+
     private final long id;
     private final Entity sender;
     private final Entity receiver;
@@ -26,6 +26,17 @@ public class Transaction implements Serializable {
         signTransaction();
     }
 
+    /**
+     * A transaction that was signed elsewhere, for example by a client of the {@link TransactionIngressServer}
+     */
+    Transaction(long id, Entity sender, Entity receiver, int amount, byte[] signature) {
+        this.id = id;
+        this.sender = sender;
+        this.receiver = receiver;
+        this.amount = amount;
+        this.signature = signature;
+    }
+
     public long getId() {
         return id;
     }
@@ -46,28 +57,28 @@ public class Transaction implements Serializable {
         return signature;
     }
 
+    /* The data covered by the signature */
+    String getSignedData() {
+        return String.format("%d%s%s%d", id, sender.getName(), receiver.getName(), amount);
+    }
+
     private void signTransaction() {
-        String data = String.format("%d%s%s%d", id, sender.getName(), receiver.getName(), amount);
+        BlockchainEvents.SignatureOperation event = new BlockchainEvents.SignatureOperation();
+        event.begin();
 
         try {
             Signature rsa = Signature.getInstance(SecurityKeyPair.SIGNATURE_ALGORITHM);
-            rsa.initSign(getPrivateKeyFromFile());
-            rsa.update(data.getBytes());
+            rsa.initSign(PrivateKeyHolder.PRIVATE_KEY);
+            rsa.update(getSignedData().getBytes());
             signature = rsa.sign();
         } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
             throw new RuntimeException(e);
         }
-    }
 
-    private PrivateKey getPrivateKeyFromFile() {
-        try {
-            byte[] keyBytes = Files.readAllBytes(new File(SecurityKeyPair.PATH_TO_PRIVATE_KEY).toPath());
-            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(keyBytes);
-            KeyFactory kf = KeyFactory.getInstance(SecurityKeyPair.KEY_PAIR_ALGORITHM);
-
-            return kf.generatePrivate(spec);
-        } catch (IOException | NoSuchAlgorithmException | InvalidKeySpecException e) {
-            throw new RuntimeException(e);
+        if (event.shouldCommit()) {
+            event.operation = "sign";
+            event.valid = true;
+            event.commit();
         }
     }
 
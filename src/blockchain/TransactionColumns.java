@@ -0,0 +1,193 @@
+package blockchain;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The transactions of a block, stored column by column: parallel arrays of IDs, sender and receiver entity IDs
+ * and amounts, and one buffer holding all signatures.  Scanning the columns does not allocate, and touches far
+ * less memory than walking a list of {@link Transaction} objects.  {@link #asTransactions()} gives the
+ * transactions back as a list for the code that needs them as objects.
+ */
+final class TransactionColumns implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /* Entity IDs index into these, they are only unique within one block */
+    private final String[] entityNames;
+    private final Entity.Type[] entityTypes;
+    private final long[] ids;
+    private final int[] senders;
+    private final int[] receivers;
+    private final int[] amounts;
+    private final byte[] signatures;
+    private final int[] signatureOffsets;
+    private transient Entity[] entities;
+
+    private TransactionColumns(String[] entityNames, Entity.Type[] entityTypes, long[] ids, int[] senders,
+                               int[] receivers, int[] amounts, byte[] signatures, int[] signatureOffsets) {
+        this.entityNames = entityNames;
+        this.entityTypes = entityTypes;
+        this.ids = ids;
+        this.senders = senders;
+        this.receivers = receivers;
+        this.amounts = amounts;
+        this.signatures = signatures;
+        this.signatureOffsets = signatureOffsets;
+    }
+
+    static TransactionColumns of(List<Transaction> transactions) {
+        int size = transactions.size();
+        Map<String, Integer> entityIds = new HashMap<>();
+        List<Entity> entities = new ArrayList<>();
+        long[] ids = new long[size];
+        int[] senders = new int[size];
+        int[] receivers = new int[size];
+        int[] amounts = new int[size];
+        int[] signatureOffsets = new int[size + 1];
+
+        for (int row = 0; row < size; row++) {
+            Transaction transaction = transactions.get(row);
+            ids[row] = transaction.getId();
+            senders[row] = entityIds.computeIfAbsent(transaction.getSender().getName(),
+                    name -> addEntity(entities, transaction.getSender()));
+            receivers[row] = entityIds.computeIfAbsent(transaction.getReceiver().getName(),
+                    name -> addEntity(entities, transaction.getReceiver()));
+            amounts[row] = transaction.getAmount();
+            signatureOffsets[row + 1] = signatureOffsets[row] + transaction.getSignature().length;
+        }
+
+        byte[] signatures = new byte[signatureOffsets[size]];
+
+        for (int row = 0; row < size; row++) {
+            byte[] signature = transactions.get(row).getSignature();
+            System.arraycopy(signature, 0, signatures, signatureOffsets[row], signature.length);
+        }
+
+        return new TransactionColumns(entities.stream().map(Entity::getName).toArray(String[]::new),
+                entities.stream().map(Entity::getType).toArray(Entity.Type[]::new),
+                ids, senders, receivers, amounts, signatures, signatureOffsets);
+    }
+
+    private static int addEntity(List<Entity> entities, Entity entity) {
+        entities.add(entity);
+
+        return entities.size() - 1;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    long getId(int row) {
+        return ids[row];
+    }
+
+    int getSender(int row) {
+        return senders[row];
+    }
+
+    int getReceiver(int row) {
+        return receivers[row];
+    }
+
+    String getEntityName(int entityId) {
+        return entityNames[entityId];
+    }
+
+    int getAmount(int row) {
+        return amounts[row];
+    }
+
+    /* The signature of a row is getSignatureLength(row) bytes at getSignatureOffset(row) of this buffer */
+    byte[] getSignatureBuffer() {
+        return signatures;
+    }
+
+    int getSignatureOffset(int row) {
+        return signatureOffsets[row];
+    }
+
+    int getSignatureLength(int row) {
+        return signatureOffsets[row + 1] - signatureOffsets[row];
+    }
+
+    /* The same as Transaction.getSignedData() */
+    String getSignedData(int row) {
+        return String.format("%d%s%s%d", ids[row], entityNames[senders[row]], entityNames[receivers[row]],
+                amounts[row]);
+    }
+
+    /**
+     * The same as {@link Blockchain#digestOf} of {@link #asTransactions()}, fed into the digest row by row, the
+     * way {@link BlockTemplateBuilder} computes it, instead of creating a {@link Transaction} per row and the text
+     * of the whole list.
+     */
+    Hash256 digest() {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        StringBuilder text = new StringBuilder("[");
+
+        for (int row = 0; row < ids.length; row++) {
+            // the same as Transaction.toString()
+            text.append(row == 0 ? "" : ", ")
+                    .append("Transaction{id = ").append(ids[row])
+                    .append(", sender = ").append(entityNames[senders[row]])
+                    .append(", receiver = ").append(entityNames[receivers[row]])
+                    .append(", amount = ").append(amounts[row]).append('}');
+            digest.update(text.toString().getBytes(StandardCharsets.UTF_8));
+            text.setLength(0);
+        }
+
+        digest.update(text.append(']').toString().getBytes(StandardCharsets.UTF_8));
+
+        return Hash256.of(digest.digest());
+    }
+
+    /**
+     * The rows as {@link Transaction}s, created as they are read.  Transactions with the same sender or receiver
+     * share one {@link Entity}, which carries the name and type but not the balance.
+     */
+    List<Transaction> asTransactions() {
+        return new AbstractList<>() {
+            @Override
+            public Transaction get(int row) {
+                int offset = signatureOffsets[row];
+                byte[] signature = Arrays.copyOfRange(signatures, offset, signatureOffsets[row + 1]);
+
+                return new Transaction(ids[row], getEntity(senders[row]), getEntity(receivers[row]), amounts[row],
+                        signature);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    private synchronized Entity getEntity(int entityId) {
+        if (entities == null) {
+            entities = new Entity[entityNames.length];
+        }
+
+        if (entities[entityId] == null) {
+            entities[entityId] = new Entity(entityNames[entityId], entityTypes[entityId], 0);
+        }
+
+        return entities[entityId];
+    }
+}
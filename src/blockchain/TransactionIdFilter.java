@@ -0,0 +1,141 @@
+package blockchain;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A partitioned Bloom filter over the IDs of the committed transactions.  It answers "certainly not committed"
+ * for almost every new ID without holding the IDs themselves; a "maybe" has to be confirmed against the chain,
+ * see {@link Blockchain#isCommitted}.  IDs go into the newest partition, and a new one is started when it is
+ * full.  Beyond {@link #MAX_PARTITIONS} the oldest partition is dropped, and every ID up to the highest one it
+ * held is a "maybe" from then on, so memory stays bounded however many transactions the chain has.
+ */
+class TransactionIdFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int IDS_PER_PARTITION = 1 << 16;
+    private static final int BITS_PER_ID = 10;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int MAX_PARTITIONS = 64;
+
+    private static final class Partition implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int BITS = IDS_PER_PARTITION * BITS_PER_ID;
+
+        private final long[] bits = new long[BITS / Long.SIZE];
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private int count;
+
+        void add(long id) {
+            long hash = mix(id);
+
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                int bit = bitIndex(hash, i);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+            count++;
+        }
+
+        boolean mightContain(long id) {
+            if (id < minId || id > maxId) {
+                return false;
+            }
+
+            long hash = mix(id);
+
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                int bit = bitIndex(hash, i);
+
+                if ((bits[bit >>> 6] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /* The i-th of the hash functions, derived from the two halves of one 64 bit hash */
+        private static int bitIndex(long hash, int i) {
+            int combined = (int) hash + i * (int) (hash >>> 32);
+
+            return Math.floorMod(combined, BITS);
+        }
+    }
+
+    private final Deque<Partition> partitions = new ArrayDeque<>();
+    private long droppedUpToId = Long.MIN_VALUE;
+    private long size;
+    private transient long lookups;
+    private transient long positives;
+    private transient long falsePositives;
+
+    void add(long id) {
+        if (partitions.isEmpty() || partitions.getLast().count >= IDS_PER_PARTITION) {
+            if (partitions.size() == MAX_PARTITIONS) {
+                droppedUpToId = Math.max(droppedUpToId, partitions.removeFirst().maxId);
+            }
+
+            partitions.addLast(new Partition());
+        }
+
+        partitions.getLast().add(id);
+        size++;
+    }
+
+    /* For IDs that are not known one by one any more, such as those of pruned blocks */
+    void addAllUpTo(long id) {
+        droppedUpToId = Math.max(droppedUpToId, id);
+    }
+
+    /**
+     * Drops the newest partitions, down to the first that holds no ID from the given one up, for a chain that
+     * lost its last blocks
+     *
+     * @return the highest ID still known, the IDs above it that are still committed have to be added again
+     */
+    long removeFrom(long id) {
+        while (!partitions.isEmpty() && partitions.getLast().maxId >= id) {
+            size -= partitions.removeLast().count;
+        }
+
+        return partitions.isEmpty() ? droppedUpToId : partitions.getLast().maxId;
+    }
+
+    /* False means the ID was certainly never added */
+    boolean mightContain(long id) {
+        lookups++;
+        boolean maybe = id <= droppedUpToId || partitions.stream().anyMatch(p -> p.mightContain(id));
+
+        if (maybe) {
+            positives++;
+        }
+
+        return maybe;
+    }
+
+    /* For a "maybe" that the chain did not confirm */
+    void recordFalsePositive() {
+        falsePositives++;
+    }
+
+    String getStats() {
+        long bytes = (long) partitions.size() * Partition.BITS / Byte.SIZE;
+
+        return String.format("Transaction ID filter: %d IDs in %d partitions, about %d KB, %d lookups, " +
+                        "%d positives, %d false positives", size, partitions.size(), bytes / 1024, lookups,
+                positives, falsePositives);
+    }
+
+    /* The finalizer of SplitMix64, so neighbouring IDs end up far apart */
+    private static long mix(long id) {
+        long z = id;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,67 @@
+package blockchain;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lets external clients submit signed transactions in batches over a local port, see {@link IngressProtocol}.
+ * Every transaction goes through the {@link IngressPipeline} before it goes into the pending transactions, and
+ * every batch is acknowledged with the number of transactions that were accepted and rejected.
+ */
+class TransactionIngressServer {
+    private static final int MAX_VERIFY_THREADS = Integer.getInteger("blockchain.ingressVerifyThreads",
+            Runtime.getRuntime().availableProcessors());
+
+    private final FrameTransport transport;
+    private final IngressPipeline pipeline;
+    private final Thread thread;
+
+    TransactionIngressServer(Blockchain blockchain, int port) throws IOException {
+        Map<String, Entity> entitiesByName = blockchain.getEntities().stream()
+                .collect(Collectors.toMap(Entity::getName, Function.identity()));
+        this.transport = new FrameTransport(port, this::receiveBatch);
+        this.pipeline = new IngressPipeline(blockchain, entitiesByName, MAX_VERIFY_THREADS, this::sendAck);
+        this.thread = new Thread(transport, "transaction-ingress");
+    }
+
+    void start() {
+        pipeline.start();
+        thread.start();
+    }
+
+    /* The pipeline first, so that its last acknowledgements still go out */
+    void stop() throws InterruptedException {
+        pipeline.stop();
+        transport.close();
+        thread.join();
+    }
+
+    /* How many threads verify signatures, up to the maximum given with -Dblockchain.ingressVerifyThreads */
+    void setVerifyThreads(int verifyThreads) {
+        pipeline.setVerifyThreads(verifyThreads);
+    }
+
+    int getVerifyBacklog() {
+        return pipeline.getVerifyBacklog();
+    }
+
+    /* Throughput and queue depth of each stage of the pipeline */
+    String getStats() {
+        return pipeline.getStats();
+    }
+
+    /* A frame that does not even start like a batch ends the connection, see FrameTransport */
+    private void receiveBatch(FrameChannel client, byte[] frame) {
+        if (!IngressProtocol.hasValidBatchHeader(frame)) {
+            throw new IllegalArgumentException("Malformed transaction batch header");
+        }
+
+        pipeline.submit(client, frame);
+    }
+
+    private void sendAck(FrameChannel client, IngressProtocol.Ack ack) {
+        transport.send(client, FrameChannel.encode(IngressProtocol.encodeAck(ack)));
+    }
+}
@@ -22,13 +22,21 @@ public class TransactionTask implements Runnable {
     @Override
     public void run() {
         while(true) {
-            Entity sender = getASenderWithMoney();
-            Entity receiver = getAnAppropriateReceiver(sender);
-            int amount = getAnAmount(sender);
-            blockchain.addToPendingTransactions(new Transaction(blockchain.getNextTransactionId(),
-                    sender, receiver, amount));
-            sender.decreaseAmountBy(amount);
-            receiver.increaseAmountBy(amount);
+            Entity sender;
+            Entity receiver;
+            int amount;
+
+            // balances only change under the lock of the chain, so the sender cannot run dry while it is picked
+            synchronized (blockchain) {
+                sender = getASenderWithMoney();
+                receiver = getAnAppropriateReceiver(sender);
+                amount = getAnAmount(sender);
+            }
+
+            // signed before it takes the lock of the chain; the balances only move if it is admitted, which it is
+            // not if the sender spent the money meanwhile, or a transaction with a higher ID got in first
+            Transaction transaction = new Transaction(blockchain.getNextTransactionId(), sender, receiver, amount);
+            blockchain.admitOwnTransaction(transaction);
 
             try {
                 TimeUnit.MILLISECONDS.sleep(MILLISECONDS_BETWEEN_TRANSACTIONS);
@@ -0,0 +1,168 @@
+package blockchain;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which signatures have been verified, so a transaction is only verified once, whether that is on
+ * arrival or when a block is validated.  An entry is the digest of the signed data and the signature, each after
+ * its length, so a transaction that was changed in any way is verified again.  The entries are spread over
+ * segments, each a least recently used map with its own lock, which keeps the verifiers from waiting on each
+ * other.  The cache is saved with the chain, so validating the chain again after a reload is cheap too; each
+ * segment is copied under its lock as it is written, as the verifiers keep adding to it while a checkpoint saves
+ * the chain.
+ */
+class VerifiedSignatureCache implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private static final int SEGMENTS = 16;
+    /* A Hash256 (48 bytes), a LinkedHashMap entry (40 bytes) and its slot in the table (8 bytes), about */
+    private static final int ESTIMATED_BYTES_PER_ENTRY = 96;
+
+    private static final class Segment extends LinkedHashMap<Hash256, Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Hash256, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private final int segmentCapacity;
+    private transient Segment[] segments;
+    private transient AtomicLong hits = new AtomicLong();
+    private transient AtomicLong misses = new AtomicLong();
+
+    VerifiedSignatureCache(int capacity) {
+        this.segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        this.segments = newSegments();
+    }
+
+    private Segment[] newSegments() {
+        Segment[] newSegments = new Segment[SEGMENTS];
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            newSegments[i] = new Segment(segmentCapacity);
+        }
+
+        return newSegments;
+    }
+
+    static Hash256 keyOf(String signedData, byte[] signature, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] data = signedData.getBytes(StandardCharsets.UTF_8);
+            // each part after its length, so moving bytes from one to the other changes the key
+            digest.update(lengthOf(data.length));
+            digest.update(data);
+            digest.update(lengthOf(length));
+            digest.update(signature, offset, length);
+
+            return Hash256.of(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] lengthOf(int length) {
+        return new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length };
+    }
+
+    boolean contains(Hash256 key) {
+        Segment segment = segmentFor(key);
+        boolean found;
+
+        synchronized (segment) {
+            found = segment.get(key) != null;
+        }
+
+        (found ? hits : misses).incrementAndGet();
+
+        return found;
+    }
+
+    /* Only for signatures that verified */
+    void add(Hash256 key) {
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            segment.put(key, Boolean.TRUE);
+        }
+    }
+
+    int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    String getStats() {
+        long total = hits.get() + misses.get();
+        double hitRate = total == 0 ? 0 : 100.0 * hits.get() / total;
+        int size = size();
+
+        return String.format("Signature cache: %d verified, %d hits, %d misses, %.1f%% hit rate, about %d KB",
+                size, hits.get(), misses.get(), hitRate, (long) size * ESTIMATED_BYTES_PER_ENTRY / 1024);
+    }
+
+    /* By the top bits, as the maps of the segments index by the low ones */
+    private Segment segmentFor(Hash256 key) {
+        return segments[key.hashCode() >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS))];
+    }
+
+    /* The keys of each segment, least recently used first, so reading them back keeps that order */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        for (Segment segment : segments) {
+            Hash256[] keys;
+
+            synchronized (segment) {
+                keys = segment.keySet().toArray(new Hash256[0]);
+            }
+
+            out.writeInt(keys.length);
+
+            for (Hash256 key : keys) {
+                out.writeObject(key);
+            }
+        }
+    }
+
+    /* The counters are for this run only */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        segments = newSegments();
+
+        for (Segment segment : segments) {
+            int size = in.readInt();
+
+            for (int i = 0; i < size; i++) {
+                segment.put((Hash256) in.readObject(), Boolean.TRUE);
+            }
+        }
+
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+}
@@ -0,0 +1,86 @@
+package blockchain;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mines a few blocks with no local mining threads, so that only a {@link MiningWorker} connected to the
+ * {@link MiningCoordinator} can seal them, and checks that the saved chain holds all of them and validates.
+ * Run it with ./build.sh test.
+ */
+public class RemoteMiningTest {
+    private static final int BLOCKS = 3;
+    private static final int WORKER_THREADS = 2;
+    private static final long TIMEOUT_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        Path dataDirectory = Files.createTempDirectory("blockchain-remote-mining");
+        int port = findFreePort();
+        // the scheduler gives mining no threads, so the remote mining task is the only one
+        System.setProperty("blockchain.scheduler.mining.min", "0");
+        System.setProperty("blockchain.scheduler.mining.max", "0");
+
+        Thread worker = new Thread(() -> MiningWorker.main(new String[] {
+                String.valueOf(port), "test-worker", String.valueOf(WORKER_THREADS) }), "test-worker");
+        worker.setDaemon(true);
+        worker.start();
+
+        MinerConfig config = MinerConfig.load(writeSettings(dataDirectory, port).toString(), false);
+        Thread miner = new Thread(() -> new Miner(config).run(), "test-miner");
+        miner.start();
+        miner.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        if (miner.isAlive()) {
+            fail("the miner did not finish " + BLOCKS + " blocks within " + TIMEOUT_SECONDS + " s");
+        }
+
+        if (!Files.exists(config.getChainFile())) {
+            fail("the miner did not save a valid chain");
+        }
+
+        Blockchain blockchain = (Blockchain) SerializationUtils.deserialize(config.getChainFile().toString());
+        blockchain.initializeStorage();
+
+        if (blockchain.getSize() != BLOCKS) {
+            fail(String.format("expected %d blocks, found %d", BLOCKS, blockchain.getSize()));
+        }
+
+        if (!blockchain.validate()) {
+            fail("the saved chain does not validate");
+        }
+
+        System.out.printf("RemoteMiningTest passed: %d blocks mined by the worker alone%n", BLOCKS);
+        System.exit(0);
+    }
+
+    private static Path writeSettings(Path dataDirectory, int port) throws IOException {
+        Properties settings = new Properties();
+        settings.setProperty("blocks", String.valueOf(BLOCKS));
+        settings.setProperty("dataDirectory", dataDirectory.toString());
+        settings.setProperty("poolPort", String.valueOf(port));
+        Path file = dataDirectory.resolve("blockchain.properties");
+
+        try (Writer writer = new FileWriter(file.toFile())) {
+            settings.store(writer, null);
+        }
+
+        return file;
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("RemoteMiningTest failed: " + message);
+        System.exit(1);
+    }
+}